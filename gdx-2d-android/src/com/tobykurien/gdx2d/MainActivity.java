@@ -13,6 +13,14 @@ public class MainActivity extends AndroidApplication {
         AndroidApplicationConfiguration cfg = new AndroidApplicationConfiguration();
         cfg.useGL20 = false;
         
-        initialize(new Gdx2d(), cfg);
+        // compiled body editor models can be memory mapped here
+        CompiledModel.setBufferSource(new MappedBufferSource());
+
+        // the extra "gdx2d.physicsThread" steps physics on a thread of its own,
+        // e.g. adb shell am start -n com.tobykurien.gdx2d/.MainActivity --ez gdx2d.physicsThread true
+        ThreadedPhysics physics = null;
+        if (getIntent().getBooleanExtra("gdx2d.physicsThread", false)) physics = new PhysicsThread();
+        
+        initialize(new Gdx2d(physics), cfg);
     }
 }
\ No newline at end of file
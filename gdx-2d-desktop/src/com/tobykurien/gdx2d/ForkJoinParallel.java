@@ -0,0 +1,75 @@
+package com.tobykurien.gdx2d;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * Splits a loop into chunks and runs them on a fork-join pool, one worker
+ * per core by default. It lives with the desktop launcher, which the
+ * headless tools build against too: GWT has no fork-join pool and Android
+ * only has one from API 21.
+ */
+public class ForkJoinParallel implements ParallelFor, Disposable {
+   static final int DEFAULT_CHUNK = 1024;
+
+   private final ForkJoinPool pool;
+   private final int chunk;
+
+   public ForkJoinParallel() {
+      this(Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK);
+   }
+
+   /**
+    * @param threads Number of workers.
+    * @param chunk Ranges this small are not split further.
+    */
+   public ForkJoinParallel(int threads, int chunk) {
+      if (chunk < 1) throw new IllegalArgumentException("chunk < 1");
+      this.pool = new ForkJoinPool(threads);
+      this.chunk = chunk;
+   }
+
+   @Override
+   public void run(int count, Range range) {
+      if (count <= chunk) {
+         ParallelFor.SEQUENTIAL.run(count, range);
+      } else {
+         pool.invoke(new Split(range, 0, count, chunk));
+      }
+   }
+
+   public int getThreads() {
+      return pool.getParallelism();
+   }
+
+   @Override
+   public void dispose() {
+      pool.shutdown();
+   }
+
+   private static class Split extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+
+      final Range range;
+      final int from, to, chunk;
+
+      Split(Range range, int from, int to, int chunk) {
+         this.range = range;
+         this.from = from;
+         this.to = to;
+         this.chunk = chunk;
+      }
+
+      @Override
+      protected void compute() {
+         if (to - from <= chunk) {
+            range.run(from, to);
+         } else {
+            int mid = (from + to) >>> 1;
+            invokeAll(new Split(range, from, mid, chunk), new Split(range, mid, to, chunk));
+         }
+      }
+   }
+}
@@ -2,6 +2,7 @@ package com.tobykurien.gdx2d;
 
 import com.badlogic.gdx.backends.lwjgl.LwjglApplication;
 import com.badlogic.gdx.backends.lwjgl.LwjglApplicationConfiguration;
+import com.badlogic.gdx.files.FileHandle;
 
 public class Main {
 	public static void main(String[] args) {
@@ -11,6 +12,47 @@ public class Main {
 		cfg.width = 480;
 		cfg.height = 320;
 		
-		new LwjglApplication(new Gdx2d(), cfg);
+		// compiled body editor models can be memory mapped here
+		CompiledModel.setBufferSource(new MappedBufferSource());
+
+		// -Dgdx2d.physicsThread steps physics on a thread of its own
+		ThreadedPhysics physics = null;
+		if (Boolean.getBoolean("gdx2d.physicsThread")) physics = new PhysicsThread();
+
+		Gdx2d game = new Gdx2d(physics);
+
+		// -Dgdx2d.hud shows the metrics, -Dgdx2d.metrics=<file> records them,
+		// as CSV if the name ends in .csv, else in line protocol
+		game.setHudVisible(Boolean.getBoolean("gdx2d.hud"));
+		game.setSettling(Boolean.getBoolean("gdx2d.settle"));
+
+		// -Dgdx2d.budget=<ms> is the frame time the quality governor aims
+		// for, 0 turns it off
+		String budget = System.getProperty("gdx2d.budget");
+		if (budget != null) {
+			float millis = Float.parseFloat(budget);
+			game.setGovernor(millis > 0 ? new QualityGovernor(millis, QualityGovernor.LEVELS) : null);
+		}
+
+		// -Dgdx2d.particles=<capacity> makes balls particles, solved on all cores
+		int particles = Integer.getInteger("gdx2d.particles", 0);
+		if (particles > 0) {
+			ParticleSystem system = new ParticleSystem(particles, BallPool.BALL_RADIUS);
+			system.setParallel(new ForkJoinParallel());
+			game.setParticles(system);
+		}
+		String metrics = System.getProperty("gdx2d.metrics");
+		if (metrics != null) {
+			game.setMetricsWriter(MetricsWriter.open(new FileHandle(metrics),
+					metrics.endsWith(".csv") ? MetricsWriter.Format.CSV : MetricsWriter.Format.LINE_PROTOCOL));
+		}
+
+		// -Dgdx2d.record=<file> records spawns for ReplayRunner
+		String record = System.getProperty("gdx2d.record");
+		if (record != null) {
+			game.setSpawnRecorder(SpawnRecorder.open(new FileHandle(record)));
+		}
+
+		new LwjglApplication(game, cfg);
 	}
 }
@@ -0,0 +1,64 @@
+package com.tobykurien.gdx2d.headless;
+
+import com.badlogic.gdx.physics.box2d.Body;
+import com.tobykurien.gdx2d.BallPool;
+import com.tobykurien.gdx2d.Simulation;
+
+/**
+ * Regression check for the allocation-free frame loop. Runs the scene
+ * headless with a warm ball pool, keeps spawning from it, and exits with a
+ * non-zero status if the average allocation per frame goes over the
+ * threshold.
+ * <br/><br/>
+ *
+ * Usage: AllocationCheck [frames] [max bytes per frame]
+ */
+public class AllocationCheck {
+   static final int DEFAULT_FRAMES = 2000;
+   static final long DEFAULT_MAX_BYTES_PER_FRAME = 16;
+   static final int WARMUP_FRAMES = 600;
+   static final int SPAWN_INTERVAL = 6;
+
+   public static void main(String[] args) {
+      int frames = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_FRAMES;
+      long maxBytes = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_MAX_BYTES_PER_FRAME;
+
+      Simulation sim = Headless.newSimulation();
+      float delta = 1 / 60f;
+
+      // fill the pool up front, so spawning during the run is served from it
+      BallPool balls = sim.getBalls();
+      int needed = (WARMUP_FRAMES + frames) / SPAWN_INTERVAL + 1;
+      Body[] warm = new Body[needed];
+      for (int i = 0; i < needed; i++) warm[i] = balls.obtain(0, 1);
+      for (int i = 0; i < needed; i++) balls.free(warm[i]);
+
+      for (int i = 0; i < WARMUP_FRAMES; i++) {
+         if (i % SPAWN_INTERVAL == 0) sim.spawnBall();
+         sim.update(delta);
+      }
+
+      long before = Headless.allocatedBytes();
+      if (before < 0) {
+         System.err.println("Allocation counting is not supported by this JVM");
+         System.exit(2);
+      }
+      for (int i = 0; i < frames; i++) {
+         if (i % SPAWN_INTERVAL == 0) sim.spawnBall();
+         sim.update(delta);
+      }
+      long allocated = Headless.allocatedBytes() - before;
+
+      long perFrame = allocated / frames;
+      System.out.println("frames=" + frames + " bodies=" + sim.getWorld().getBodyCount()
+               + " pool hits=" + balls.getHits() + " misses=" + balls.getMisses()
+               + " allocated=" + allocated + " bytes/frame=" + perFrame);
+      sim.dispose();
+
+      if (perFrame > maxBytes) {
+         System.err.println("FAIL: " + perFrame + " bytes/frame, limit is " + maxBytes);
+         System.exit(1);
+      }
+      System.out.println("OK");
+   }
+}
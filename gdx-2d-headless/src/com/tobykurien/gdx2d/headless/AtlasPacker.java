@@ -0,0 +1,181 @@
+package com.tobykurien.gdx2d.headless;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.math.MathUtils;
+import com.tobykurien.gdx2d.Gdx2d;
+import com.tobykurien.gdx2d.ProceduralTextures;
+
+/**
+ * Packs the images in data/gfx, the font page and the ball into one
+ * power-of-two page and writes it with a libgdx .atlas file next to it.
+ * Regions are named by their path below data/ without the extension, the
+ * name {@link Gdx2d#findRegion(String)} looks up for a body's image path.
+ * <br/><br/>
+ *
+ * Images are placed on shelves, tallest first, with padding between them so
+ * linear filtering doesn't bleed neighbours in. The page is the smallest
+ * square that fits, up to {@link #MAX_SIZE}.
+ * <br/><br/>
+ *
+ * Usage: AtlasPacker [out.atlas]
+ */
+public class AtlasPacker {
+   static final int PADDING = 2;
+   static final int MAX_SIZE = 2048;
+
+   static class Image {
+      final String name;
+      final Pixmap pixmap;
+      int x, y;
+
+      Image(String name, Pixmap pixmap) {
+         this.name = name;
+         this.pixmap = pixmap;
+      }
+   }
+
+   public static void main(String[] args) throws IOException {
+      Headless.init();
+      FileHandle out = args.length > 0 ? new FileHandle(args[0]) : Headless.asset(Gdx2d.ATLAS);
+
+      List<Image> images = new ArrayList<Image>();
+      for (FileHandle file : Headless.asset("data/gfx").list(".png")) {
+         images.add(new Image("gfx/" + file.nameWithoutExtension(), new Pixmap(file)));
+      }
+      images.add(new Image(Gdx2d.FONT_REGION, new Pixmap(Headless.asset("data/monaco.png"))));
+      images.add(new Image(Gdx2d.BALL_REGION, ProceduralTextures.draw(Gdx2d.BALL_PIXELS, Color.RED,
+               ProceduralTextures.Shape.CIRCLE)));
+
+      Collections.sort(images, new Comparator<Image>() {
+         @Override
+         public int compare(Image a, Image b) {
+            int byHeight = b.pixmap.getHeight() - a.pixmap.getHeight();
+            return byHeight != 0 ? byHeight : a.name.compareTo(b.name);
+         }
+      });
+
+      int size = 64;
+      while (!place(images, size)) {
+         size *= 2;
+         if (size > MAX_SIZE) throw new IllegalStateException("Images don't fit a " + MAX_SIZE + " page");
+      }
+
+      Pixmap.setBlending(Pixmap.Blending.None);
+      Pixmap page = new Pixmap(size, size, Pixmap.Format.RGBA8888);
+      for (Image image : images) {
+         page.drawPixmap(image.pixmap, image.x, image.y);
+      }
+      Pixmap.setBlending(Pixmap.Blending.SourceOver);
+      FileHandle pageFile = out.sibling(out.nameWithoutExtension() + ".png");
+      writePNG(pageFile, page);
+
+      Writer writer = out.writer(false, "UTF-8");
+      try {
+         writer.write("\n" + pageFile.name() + "\n");
+         writer.write("format: RGBA8888\nfilter: Linear,Linear\nrepeat: none\n");
+         for (Image image : images) {
+            int w = image.pixmap.getWidth(), h = image.pixmap.getHeight();
+            writer.write(image.name + "\n");
+            writer.write("  rotate: false\n");
+            writer.write("  xy: " + image.x + ", " + image.y + "\n");
+            writer.write("  size: " + w + ", " + h + "\n");
+            writer.write("  orig: " + w + ", " + h + "\n");
+            writer.write("  offset: 0, 0\n");
+            writer.write("  index: -1\n");
+         }
+      } finally {
+         writer.close();
+      }
+
+      int used = 0;
+      for (Image image : images) {
+         used += image.pixmap.getWidth() * image.pixmap.getHeight();
+         image.pixmap.dispose();
+      }
+      page.dispose();
+      System.out.println(String.format("%d regions on a %dx%d page, %.0f%% used: %s", images.size(), size, size,
+               100f * used / (size * size), out.path()));
+   }
+
+   /**
+    * Writes an RGBA8888 pixmap as a compressed PNG. PixmapIO.writePNG of
+    * this libgdx version stores the pixels uncompressed, 4 MB per page.
+    */
+   static void writePNG(FileHandle file, Pixmap pixmap) throws IOException {
+      int width = pixmap.getWidth(), height = pixmap.getHeight();
+      ByteBuffer pixels = pixmap.getPixels();
+      ByteArrayOutputStream idat = new ByteArrayOutputStream();
+      DeflaterOutputStream deflate = new DeflaterOutputStream(idat, new Deflater(Deflater.BEST_COMPRESSION));
+      byte[] row = new byte[width * 4];
+      for (int y = 0; y < height; y++) {
+         pixels.position(y * row.length);
+         pixels.get(row);
+         deflate.write(0); // no filter
+         deflate.write(row);
+      }
+      deflate.finish();
+      pixels.position(0);
+
+      ByteArrayOutputStream ihdr = new ByteArrayOutputStream();
+      DataOutputStream header = new DataOutputStream(ihdr);
+      header.writeInt(width);
+      header.writeInt(height);
+      header.write(new byte[] { 8, 6, 0, 0, 0 }); // 8 bit RGBA, deflate, no filter, no interlace
+
+      DataOutputStream png = new DataOutputStream(file.write(false));
+      try {
+         png.write(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' });
+         chunk(png, "IHDR", ihdr.toByteArray());
+         chunk(png, "IDAT", idat.toByteArray());
+         chunk(png, "IEND", new byte[0]);
+      } finally {
+         png.close();
+      }
+   }
+
+   private static void chunk(DataOutputStream out, String type, byte[] data) throws IOException {
+      CRC32 crc = new CRC32();
+      byte[] name = type.getBytes("US-ASCII");
+      crc.update(name);
+      crc.update(data);
+      out.writeInt(data.length);
+      out.write(name);
+      out.write(data);
+      out.writeInt((int) crc.getValue());
+   }
+
+   /** Lays the images out on shelves in a square page, false if they don't fit. */
+   static boolean place(List<Image> images, int size) {
+      if (!MathUtils.isPowerOfTwo(size)) throw new IllegalArgumentException("size not a power of two");
+      int x = 0, y = 0, shelf = 0;
+      for (Image image : images) {
+         int w = image.pixmap.getWidth(), h = image.pixmap.getHeight();
+         if (x + w > size) {
+            x = 0;
+            y += shelf + PADDING;
+            shelf = 0;
+         }
+         if (x + w > size || y + h > size) return false;
+         image.x = x;
+         image.y = y;
+         x += w + PADDING;
+         shelf = Math.max(shelf, h);
+      }
+      return true;
+   }
+}
@@ -0,0 +1,107 @@
+package com.tobykurien.gdx2d.headless;
+
+import java.util.Arrays;
+
+/**
+ * A minimal harness in the spirit of JMH: set up, warm up, then time every
+ * operation on its own, so that besides throughput we get the latency
+ * distribution. Allocation is taken from the thread's allocation counter
+ * over the measured part only.
+ * <br/><br/>
+ *
+ * Subclasses implement {@link #op()}, which must do one unit of work, and
+ * may keep state set up in {@link #setUp()}. Whatever {@link #op()} returns
+ * is folded into a sink so the JIT can't drop the work.
+ */
+abstract class Benchmark {
+   /** Slow benchmarks stop sampling early rather than run for minutes. */
+   static final long WARMUP_LIMIT = 2000000000L;
+   static final long MEASURE_LIMIT = 10000000000L;
+
+   final String name;
+   private long sink;
+
+   Benchmark(String name) {
+      this.name = name;
+   }
+
+   void setUp() {
+   }
+
+   abstract long op();
+
+   void tearDown() {
+   }
+
+   /**
+    * Runs the benchmark and returns its numbers. {@link #setUp()} and
+    * {@link #tearDown()} are called once around warm up and measurement.
+    * Either phase ends early when it runs over its time limit.
+    */
+   Result run(int warmup, int samples) {
+      setUp();
+      try {
+         long start = System.nanoTime();
+         for (int i = 0; i < warmup && System.nanoTime() - start < WARMUP_LIMIT; i++) sink += op();
+
+         long[] nanos = new long[samples];
+         int n = 0;
+         long allocated = Headless.allocatedBytes();
+         start = System.nanoTime();
+         long t = start;
+         while (n < samples && t - start < MEASURE_LIMIT) {
+            sink += op();
+            long now = System.nanoTime();
+            nanos[n++] = now - t;
+            t = now;
+         }
+         long total = t - start;
+         allocated = allocated < 0 ? -1 : Headless.allocatedBytes() - allocated;
+         return new Result(name, Arrays.copyOf(nanos, n), total, allocated);
+      } finally {
+         tearDown();
+      }
+   }
+
+   /** Keeps the results of {@link #op()} reachable. */
+   long sink() {
+      return sink;
+   }
+
+   static class Result {
+      final String name;
+      final int ops;
+      final double opsPerSecond;
+      final long p50, p90, p99, max;
+      /** Bytes allocated per op, or -1 if the JVM cannot tell. */
+      final long allocatedPerOp;
+
+      Result(String name, long[] nanos, long totalNanos, long allocated) {
+         this.name = name;
+         this.ops = nanos.length;
+         this.opsPerSecond = ops * 1e9 / totalNanos;
+         Arrays.sort(nanos);
+         this.p50 = percentile(nanos, 0.50);
+         this.p90 = percentile(nanos, 0.90);
+         this.p99 = percentile(nanos, 0.99);
+         this.max = nanos[nanos.length - 1];
+         this.allocatedPerOp = allocated < 0 ? -1 : allocated / ops;
+      }
+
+      static String header() {
+         return String.format("%-32s %12s %10s %10s %10s %10s %12s", "benchmark", "ops/s",
+                  "p50 us", "p90 us", "p99 us", "max us", "B alloc/op");
+      }
+
+      @Override
+      public String toString() {
+         return String.format("%-32s %12.1f %10.2f %10.2f %10.2f %10.2f %12d", name, opsPerSecond,
+                  p50 / 1000.0, p90 / 1000.0, p99 / 1000.0, max / 1000.0, allocatedPerOp);
+      }
+
+      private static long percentile(long[] sorted, double p) {
+         int i = (int) Math.ceil(p * sorted.length) - 1;
+         return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+      }
+   }
+}
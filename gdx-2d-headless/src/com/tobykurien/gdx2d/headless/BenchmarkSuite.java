@@ -0,0 +1,307 @@
+package com.tobykurien.gdx2d.headless;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.ChainShape;
+import com.badlogic.gdx.physics.box2d.FixtureDef;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+import com.tobykurien.gdx2d.BallPool;
+import com.tobykurien.gdx2d.BodyEditorLoader;
+import com.tobykurien.gdx2d.BodySprite;
+import com.tobykurien.gdx2d.QuadBatch;
+import com.tobykurien.gdx2d.Simulation;
+
+/**
+ * Benchmarks for the parts of a frame that grow with the scene: stepping
+ * the world with balls resting in the bottle, loading the model and
+ * attaching its fixtures, spawning balls, and placing sprites before they
+ * are drawn. Each reports ops/s, latency percentiles and bytes allocated
+ * per op.
+ * <br/><br/>
+ *
+ * Usage: BenchmarkSuite [name filter] [samples]
+ */
+public class BenchmarkSuite {
+   static final int[] BALLS = { 100, 500, 1000 };
+   static final float STEP = 1 / 60f;
+   static final int SETTLE_FRAMES = 600;
+   static final float TRAY_HALF_WIDTH = 1.5f;
+   static final float TRAY_BOTTOM = -2.5f;
+
+   public static void main(String[] args) {
+      String filter = args.length > 0 ? args[0] : "";
+      int samples = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+      Headless.init();
+
+      List<Benchmark> all = new ArrayList<Benchmark>();
+      for (int balls : BALLS) {
+         all.add(step(balls, false));
+         all.add(step(balls, true));
+      }
+      all.add(parse());
+      all.add(attachFixture());
+      all.add(spawnNew());
+      all.add(spawnPooled());
+      for (int balls : BALLS) {
+         all.add(spriteTransform(balls));
+         all.add(quadTransform(balls));
+      }
+
+      System.out.println(Benchmark.Result.header());
+      long sink = 0;
+      for (Benchmark b : all) {
+         if (!b.name.contains(filter)) continue;
+         System.out.println(b.run(samples / 4, samples));
+         sink += b.sink();
+      }
+      if (sink == 42) System.out.println();
+   }
+
+   /**
+    * A one-step Simulation.update with the given number of balls settled in
+    * the bottle, and optionally baked into static bodies. Going through the
+    * update handles the step's contact events and refreshes the body list
+    * the settler looks at, as in the game.
+    */
+   static Benchmark step(final int balls, final boolean baked) {
+      return new Benchmark("step " + balls + " balls" + (baked ? " baked" : "")) {
+         Simulation sim;
+
+         @Override
+         void setUp() {
+            sim = settled(balls, baked);
+         }
+
+         @Override
+         long op() {
+            // baking only pays off if watching for disturbances is cheap
+            sim.update(STEP);
+            return sim.getSteps() + sim.getContactCount();
+         }
+
+         @Override
+         void tearDown() {
+            sim.dispose();
+         }
+      };
+   }
+
+   /** Reading the JSON model and building all its bodies. */
+   static Benchmark parse() {
+      return new Benchmark("loader parse") {
+         FileHandle json;
+
+         @Override
+         void setUp() {
+            json = Headless.asset("data/test.json");
+         }
+
+         @Override
+         long op() {
+            return new BodyEditorLoader(json).getInternalModel().rigidBodies.size();
+         }
+      };
+   }
+
+   /** attachFixture of the bottle, on a fresh body each time. */
+   static Benchmark attachFixture() {
+      return new Benchmark("loader attachFixture") {
+         BodyEditorLoader loader;
+         World world;
+         BodyDef bd = new BodyDef();
+         FixtureDef fd = new FixtureDef();
+
+         @Override
+         void setUp() {
+            loader = Headless.loadModel();
+            world = new World(new Vector2(0, -10), true);
+         }
+
+         @Override
+         long op() {
+            Body body = world.createBody(bd);
+            loader.attachFixture(body, "test01", fd, 1);
+            int fixtures = body.getFixtureList().size;
+            world.destroyBody(body);
+            return fixtures;
+         }
+
+         @Override
+         void tearDown() {
+            world.dispose();
+         }
+      };
+   }
+
+   /**
+    * Spawning with an empty pool: a new body, fixture and sprite each time.
+    * The ball is destroyed again, or thousands of balls on the same spot
+    * would make the broadphase the thing being measured.
+    */
+   static Benchmark spawnNew() {
+      return new Benchmark("spawn+destroy new") {
+         Simulation sim;
+
+         @Override
+         void setUp() {
+            sim = Headless.newSimulation();
+         }
+
+         @Override
+         long op() {
+            Body body = sim.spawnBall();
+            sim.getAnimations().kill((BodySprite) body.getUserData());
+            sim.getBalls().destroy(body);
+            return body.hashCode();
+         }
+
+         @Override
+         void tearDown() {
+            sim.dispose();
+         }
+      };
+   }
+
+   /** Spawning from a warm pool, and giving the ball back. */
+   static Benchmark spawnPooled() {
+      return new Benchmark("spawn+free pooled") {
+         Simulation sim;
+
+         @Override
+         void setUp() {
+            sim = Headless.newSimulation();
+            sim.freeBall(sim.spawnBall());
+         }
+
+         @Override
+         long op() {
+            Body body = sim.spawnBall();
+            sim.freeBall(body);
+            return body.hashCode();
+         }
+
+         @Override
+         void tearDown() {
+            sim.dispose();
+         }
+      };
+   }
+
+   /** Placing every ball's sprite and computing its vertices, per frame. */
+   static Benchmark spriteTransform(final int balls) {
+      return new Benchmark("sprites " + balls + " (Sprite)") {
+         Simulation sim;
+         Array<Body> bodies = new Array<Body>();
+
+         @Override
+         void setUp() {
+            sim = settled(balls);
+            activeBalls(sim, bodies);
+         }
+
+         @Override
+         long op() {
+            long sum = 0;
+            for (int i = 0, n = bodies.size; i < n; i++) {
+               Body b = bodies.get(i);
+               BodySprite e = (BodySprite) b.getUserData();
+               e.interpolate(b, 0.5f);
+               sum += Float.floatToRawIntBits(e.getVertices()[0]);
+            }
+            return sum;
+         }
+
+         @Override
+         void tearDown() {
+            sim.dispose();
+         }
+      };
+   }
+
+   /** The same as {@link #spriteTransform(int)}, through a QuadBatch. */
+   static Benchmark quadTransform(final int balls) {
+      return new Benchmark("sprites " + balls + " (QuadBatch)") {
+         Simulation sim;
+         Array<Body> bodies = new Array<Body>();
+         QuadBatch quads = new QuadBatch(balls);
+         TextureRegion region = new TextureRegion();
+
+         @Override
+         void setUp() {
+            sim = settled(balls);
+            activeBalls(sim, bodies);
+         }
+
+         @Override
+         long op() {
+            quads.begin(region);
+            for (int i = 0, n = bodies.size; i < n; i++) {
+               Body b = bodies.get(i);
+               ((BodySprite) b.getUserData()).interpolate(b, 0.5f, quads);
+            }
+            return quads.size();
+         }
+
+         @Override
+         void tearDown() {
+            sim.dispose();
+         }
+      };
+   }
+
+   /**
+    * A scene with the given number of balls dropped onto the bottle and
+    * left to come to rest. The bottle holds about 50 balls, so a tray under
+    * it catches the rest instead of the kill zone. Balls that still get
+    * away are reported.
+    */
+   static Simulation settled(int balls) {
+      return settled(balls, false);
+   }
+
+   static Simulation settled(int balls, boolean baked) {
+      Simulation sim = Headless.newSimulation();
+      sim.setSettling(baked);
+      Body tray = sim.getWorld().createBody(new BodyDef());
+      ChainShape shape = new ChainShape();
+      shape.createChain(new Vector2[] { new Vector2(-TRAY_HALF_WIDTH, 0), new Vector2(-TRAY_HALF_WIDTH, TRAY_BOTTOM),
+               new Vector2(TRAY_HALF_WIDTH, TRAY_BOTTOM), new Vector2(TRAY_HALF_WIDTH, 0) });
+      tray.createFixture(shape, 0);
+      shape.dispose();
+
+      BallPool pool = sim.getBalls();
+      int perRow = 40;
+      for (int i = 0; i < balls; i++) {
+         pool.obtain(-1.4f + (i % perRow) * 0.07f, 0.2f + (i / perRow) * 0.07f);
+      }
+      for (int i = 0; i < SETTLE_FRAMES; i++) sim.update(STEP);
+
+      Array<Body> resting = new Array<Body>();
+      activeBalls(sim, resting);
+      int kept = resting.size + (baked ? sim.getSettler().getBaked() : 0);
+      if (kept < balls) {
+         System.out.println("# " + kept + " of " + balls + " balls stayed in the bottle");
+      }
+      if (baked) {
+         System.out.println("# " + sim.getSettler().getBaked() + " of " + kept + " balls baked into "
+                  + sim.getSettler().getCells().size + " cells");
+      }
+      return sim;
+   }
+
+   static void activeBalls(Simulation sim, Array<Body> out) {
+      out.clear();
+      Array<Body> bodies = sim.getBodies();
+      for (int i = 0, n = bodies.size; i < n; i++) {
+         Body b = bodies.get(i);
+         if (b.isActive() && b != sim.getBottle() && b.getUserData() instanceof BodySprite) out.add(b);
+      }
+   }
+}
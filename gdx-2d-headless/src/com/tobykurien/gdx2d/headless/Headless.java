@@ -0,0 +1,62 @@
+package com.tobykurien.gdx2d.headless;
+
+import java.lang.management.ManagementFactory;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.tobykurien.gdx2d.BodyEditorLoader;
+import com.tobykurien.gdx2d.Simulation;
+
+/**
+ * Shared setup for the headless tools. Nothing here needs a GL context or a
+ * libgdx backend, only the Box2D natives.
+ */
+final class Headless {
+   /** Assets as seen from this project's directory, the Eclipse default. */
+   static final String ASSETS = "../gdx-2d-android/assets/";
+
+   private static boolean loaded;
+
+   private Headless() {
+   }
+
+   static synchronized void init() {
+      if (!loaded) {
+         GdxNativesLoader.load();
+         loaded = true;
+      }
+   }
+
+   static FileHandle asset(String path) {
+      return new FileHandle(ASSETS + path);
+   }
+
+   static BodyEditorLoader loadModel() {
+      init();
+      return new BodyEditorLoader(asset("data/test.json"));
+   }
+
+   /** A scene without textures, its sprites are only positioned. */
+   static Simulation newSimulation() {
+      return new Simulation(loadModel(), null, null);
+   }
+
+   /** CPU time used so far by the current thread, or -1 if unsupported. */
+   static long cpuNanos() {
+      java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      return bean.isCurrentThreadCpuTimeSupported() ? bean.getCurrentThreadCpuTime() : -1;
+   }
+
+   /**
+    * Bytes allocated so far by the current thread, or -1 if the JVM cannot
+    * tell.
+    */
+   static long allocatedBytes() {
+      java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean) {
+         return ((com.sun.management.ThreadMXBean) bean)
+                  .getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+      return -1;
+   }
+}
@@ -0,0 +1,51 @@
+package com.tobykurien.gdx2d.headless;
+
+import com.tobykurien.gdx2d.BodyEditorLoader;
+import com.tobykurien.gdx2d.BodyEditorLoader.MergeResult;
+import com.tobykurien.gdx2d.Simulation;
+
+/**
+ * Step time with balls piled into the bottle, with and without merging the
+ * bottle's polygons first.
+ * <br/><br/>
+ *
+ * Usage: MergeBenchmark [area tolerance] [balls] [steps]
+ */
+public class MergeBenchmark {
+   public static void main(String[] args) {
+      float tolerance = args.length > 0 ? Float.parseFloat(args[0]) : 0.25f;
+      int balls = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+      int steps = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+      BodyEditorLoader plain = Headless.loadModel();
+      BodyEditorLoader merged = Headless.loadModel();
+      MergeResult result = merged.mergePolygons("test01", tolerance);
+      System.out.println("test01 fixtures: " + result.before + " -> " + result.after
+               + " (area tolerance " + tolerance + ")");
+
+      // twice each, alternating, so the JIT warm-up doesn't favour either
+      for (int round = 0; round < 2; round++) {
+         run("unmerged", new Simulation(plain, null, null), balls, steps);
+         run("merged", new Simulation(merged, null, null), balls, steps);
+      }
+   }
+
+   private static void run(String name, Simulation sim, int balls, int steps) {
+      float delta = 1 / sim.getStepRate();
+
+      // pour the balls in and let the pile settle
+      for (int i = 0; i < balls * 2; i++) {
+         if (i % 2 == 0) sim.spawnBall();
+         sim.update(delta);
+      }
+      for (int i = 0; i < 600; i++) sim.update(delta);
+
+      long start = System.nanoTime();
+      for (int i = 0; i < steps; i++) sim.update(delta);
+      long nanos = System.nanoTime() - start;
+
+      System.out.println(String.format("%-9s %6d bodies %6d contacts %8.1f us/step", name,
+               sim.getWorld().getBodyCount(), sim.getWorld().getContactCount(), nanos / 1000.0 / steps));
+      sim.dispose();
+   }
+}
@@ -0,0 +1,34 @@
+package com.tobykurien.gdx2d.headless;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.tobykurien.gdx2d.BodyEditorLoader;
+import com.tobykurien.gdx2d.CompiledModel;
+
+/**
+ * Converts a body editor JSON project into its compiled form. Run it again
+ * whenever the JSON changes, the game prefers the compiled file.
+ * <br/><br/>
+ *
+ * Usage: ModelCompiler [in.json] [out.bem]
+ */
+public class ModelCompiler {
+   public static void main(String[] args) throws IOException {
+      Headless.init();
+      FileHandle in = args.length > 0 ? new FileHandle(args[0]) : Headless.asset("data/test.json");
+      FileHandle out = args.length > 1 ? new FileHandle(args[1])
+               : in.sibling(in.nameWithoutExtension() + "." + CompiledModel.EXTENSION);
+
+      BodyEditorLoader loader = new BodyEditorLoader(in);
+      OutputStream output = out.write(false);
+      try {
+         CompiledModel.write(loader.getInternalModel(), output);
+      } finally {
+         output.close();
+      }
+      System.out.println(in.path() + " (" + in.length() + " bytes) -> "
+               + out.path() + " (" + out.length() + " bytes)");
+   }
+}
@@ -0,0 +1,70 @@
+package com.tobykurien.gdx2d.headless;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.tobykurien.gdx2d.BodyEditorLoader;
+import com.tobykurien.gdx2d.CompiledModel;
+import com.tobykurien.gdx2d.MappedBufferSource;
+
+/**
+ * Compares loading the body editor model from JSON and from its compiled
+ * form, eagerly and lazily (index, then build only "test01"): time per
+ * load, bytes allocated per load and heap retained by the loaded model.
+ * <br/><br/>
+ *
+ * Usage: ModelLoadBenchmark [iterations]
+ */
+public class ModelLoadBenchmark {
+   static final int RETAINED = 1000;
+
+   public static void main(String[] args) {
+      int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+      Headless.init();
+      FileHandle json = Headless.asset("data/test.json");
+      FileHandle compiled = Headless.asset("data/test." + CompiledModel.EXTENSION);
+      if (!compiled.exists()) {
+         System.err.println(compiled.path() + " not found, run ModelCompiler first");
+         System.exit(1);
+      }
+
+      run("json", json, false, iterations);
+      run("json lazy", json, true, iterations);
+      CompiledModel.setBufferSource(CompiledModel.DIRECT);
+      run("binary direct", compiled, false, iterations);
+      run("binary lazy", compiled, true, iterations);
+      CompiledModel.setBufferSource(new MappedBufferSource());
+      run("binary mapped", compiled, false, iterations);
+   }
+
+   private static void run(String name, FileHandle file, boolean lazy, int iterations) {
+      // warm up
+      for (int i = 0; i < iterations / 4; i++) load(file, lazy);
+
+      long allocated = Headless.allocatedBytes();
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) load(file, lazy);
+      long nanos = System.nanoTime() - start;
+      allocated = Headless.allocatedBytes() - allocated;
+
+      // keep a few models alive to see what they cost on the heap
+      long before = usedHeap();
+      BodyEditorLoader[] kept = new BodyEditorLoader[RETAINED];
+      for (int i = 0; i < RETAINED; i++) kept[i] = load(file, lazy);
+      long retained = (usedHeap() - before) / RETAINED;
+      if (kept[RETAINED - 1] == null) throw new AssertionError();
+
+      System.out.println(String.format("%-14s %10.1f us/load %10d B alloc/load %10d B retained/model",
+               name, nanos / 1000.0 / iterations, allocated / iterations, retained));
+   }
+
+   private static BodyEditorLoader load(FileHandle file, boolean lazy) {
+      BodyEditorLoader loader = new BodyEditorLoader(file, lazy, 0);
+      loader.getOrigin("test01", 1);
+      return loader;
+   }
+
+   private static long usedHeap() {
+      Runtime rt = Runtime.getRuntime();
+      for (int i = 0; i < 3; i++) System.gc();
+      return rt.totalMemory() - rt.freeMemory();
+   }
+}
@@ -0,0 +1,143 @@
+package com.tobykurien.gdx2d.headless;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.tobykurien.gdx2d.BallPool;
+import com.tobykurien.gdx2d.ForkJoinParallel;
+import com.tobykurien.gdx2d.ParallelFor;
+import com.tobykurien.gdx2d.ParticleSystem;
+import com.tobykurien.gdx2d.Simulation;
+
+/**
+ * Compares Box2D balls with particle balls: N balls are dropped as a block
+ * onto the bottle and a tray around it, and every op is one simulation
+ * step while they fall and pile up. Particles run once on one thread and
+ * once with the neighbour search on a fork-join pool.
+ * <br/><br/>
+ *
+ * Usage: ParticleBenchmark [balls...]
+ */
+public class ParticleBenchmark {
+   static final int[] DEFAULT_BALLS = { 1000, 5000, 20000 };
+   static final float STEP = 1 / 60f;
+   static final float SPACING = 0.07f;
+   static final float TRAY_BOTTOM = -2.5f;
+   static final float WALL = 0.1f;
+
+   public static void main(String[] args) {
+      int[] counts = DEFAULT_BALLS;
+      if (args.length > 0) {
+         counts = new int[args.length];
+         for (int i = 0; i < args.length; i++) counts[i] = Integer.parseInt(args[i]);
+      }
+      Headless.init();
+
+      ForkJoinParallel forkJoin = new ForkJoinParallel();
+      System.out.println("fork-join threads: " + forkJoin.getThreads());
+      System.out.println(Benchmark.Result.header() + " " + String.format("%14s", "ball-steps/s"));
+      for (int balls : counts) {
+         report(box2d(balls), balls);
+         report(particles(balls, ParallelFor.SEQUENTIAL, "particles"), balls);
+         report(particles(balls, forkJoin, "particles fork-join"), balls);
+      }
+      forkJoin.dispose();
+   }
+
+   private static void report(Benchmark b, int balls) {
+      Benchmark.Result result = b.run(60, 600);
+      System.out.println(result + " " + String.format("%14.0f", result.opsPerSecond * balls));
+   }
+
+   static Benchmark box2d(final int balls) {
+      return new Benchmark("box2d " + balls) {
+         Simulation sim;
+
+         @Override
+         void setUp() {
+            sim = Headless.newSimulation();
+            addTray(sim, balls);
+            BallPool pool = sim.getBalls();
+            int perRow = perRow(balls);
+            for (int i = 0; i < balls; i++) {
+               pool.obtain(x(i, perRow), y(i, perRow));
+            }
+         }
+
+         @Override
+         long op() {
+            sim.update(STEP);
+            return sim.getContactCount();
+         }
+
+         @Override
+         void tearDown() {
+            sim.dispose();
+         }
+      };
+   }
+
+   static Benchmark particles(final int balls, final ParallelFor parallel, String name) {
+      return new Benchmark(name + " " + balls) {
+         Simulation sim;
+         ParticleSystem particles;
+
+         @Override
+         void setUp() {
+            sim = Headless.newSimulation();
+            Body tray = addTray(sim, balls);
+            particles = new ParticleSystem(balls, BallPool.BALL_RADIUS);
+            particles.setParallel(parallel);
+            particles.addStatic(tray);
+            sim.setParticles(particles);
+            int perRow = perRow(balls);
+            for (int i = 0; i < balls; i++) {
+               particles.add(x(i, perRow), y(i, perRow));
+            }
+         }
+
+         @Override
+         long op() {
+            sim.update(STEP);
+            return particles.getCount();
+         }
+
+         @Override
+         void tearDown() {
+            sim.dispose();
+         }
+      };
+   }
+
+   /** Keeps the block about as tall as it is wide. */
+   static int perRow(int balls) {
+      return Math.max(40, (int) Math.sqrt(balls) * 2);
+   }
+
+   static float x(int i, int perRow) {
+      return (i % perRow - perRow / 2) * SPACING;
+   }
+
+   static float y(int i, int perRow) {
+      return 1 + (i / perRow) * SPACING;
+   }
+
+   /** A static box open at the top, wide enough for the block. */
+   static Body addTray(Simulation sim, int balls) {
+      int perRow = perRow(balls);
+      float halfWidth = perRow / 2 * SPACING + 0.2f;
+      float top = y(balls, perRow) + 0.5f;
+      Body tray = sim.getWorld().createBody(new BodyDef());
+      PolygonShape box = new PolygonShape();
+      box.setAsBox(halfWidth, WALL, new Vector2(0, TRAY_BOTTOM - WALL), 0);
+      tray.createFixture(box, 0);
+      float height = (top - TRAY_BOTTOM) / 2;
+      box.setAsBox(WALL, height, new Vector2(-halfWidth - WALL, TRAY_BOTTOM + height), 0);
+      tray.createFixture(box, 0);
+      box.setAsBox(WALL, height, new Vector2(halfWidth + WALL, TRAY_BOTTOM + height), 0);
+      tray.createFixture(box, 0);
+      box.dispose();
+      return tray;
+   }
+}
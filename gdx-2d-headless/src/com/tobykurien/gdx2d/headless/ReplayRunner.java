@@ -0,0 +1,116 @@
+package com.tobykurien.gdx2d.headless;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongArray;
+import com.tobykurien.gdx2d.ParticleSystem;
+import com.tobykurien.gdx2d.RollingStats;
+import com.tobykurien.gdx2d.Simulation;
+import com.tobykurien.gdx2d.SpawnRecording;
+
+/**
+ * Replays a session recorded with -Dgdx2d.record (see the desktop launcher),
+ * with the settling and particles it had, as fast as it will go, and reports
+ * what each frame cost. Frames run the steps they ran in the session, one
+ * unless recorded otherwise, and the same spawns land before the same steps,
+ * so a slowdown seen in a session shows up at the same step here, under a
+ * profiler if need be. The final state is checked against the session's
+ * checksum; a mismatch exits with status 1.
+ * <br/><br/>
+ *
+ * Usage: ReplayRunner recording.spr [per-frame.csv]
+ */
+public class ReplayRunner {
+   static final int SLOWEST = 10;
+
+   public static void main(String[] args) throws IOException {
+      if (args.length < 1) {
+         System.err.println("Usage: ReplayRunner recording.spr [per-frame.csv]");
+         System.exit(2);
+      }
+      Headless.init();
+      SpawnRecording recording = SpawnRecording.read(new FileHandle(args[0]));
+      long steps = recording.steps;
+
+      Simulation sim = Headless.newSimulation();
+      sim.setStepRate(recording.stepRate);
+      sim.setSettling(recording.settle);
+      if (recording.particleCapacity > 0) {
+         sim.setParticles(new ParticleSystem(recording.particleCapacity, recording.particleRadius));
+      }
+
+      // per frame: first step, steps, time and bodies after it
+      LongArray starts = new LongArray();
+      IntArray counts = new IntArray();
+      LongArray nanos = new LongArray();
+      IntArray bodies = new IntArray();
+      LongArray spawns = recording.spawns;
+      int nextSpawn = 0, nextFrame = 0;
+      long step = 0;
+      long start = System.nanoTime();
+      while (step < steps) {
+         long t = System.nanoTime();
+         while (nextSpawn < spawns.size && spawns.get(nextSpawn) == step) {
+            sim.spawnBall();
+            nextSpawn++;
+         }
+         int n = 1;
+         if (nextFrame < recording.frames.size && recording.frames.get(nextFrame) == step) {
+            n = recording.frameSteps.get(nextFrame++);
+         }
+         sim.updateSteps(n);
+         nanos.add(System.nanoTime() - t);
+         bodies.add(sim.getBodyCount());
+         starts.add(step);
+         counts.add(n);
+         step += n;
+      }
+      long total = System.nanoTime() - start;
+
+      int frames = nanos.size;
+      RollingStats stats = new RollingStats(Math.max(1, frames));
+      for (int i = 0; i < frames; i++) stats.add(nanos.get(i) / 1000f);
+      System.out.println(String.format("%d steps in %d frames, %d spawns, replayed in %.1f s (%.1fx real time)",
+               steps, frames, spawns.size, total / 1e9, steps / recording.stepRate / (total / 1e9)));
+      System.out.println(String.format("frame us: p50 %.1f  p90 %.1f  p99 %.1f  max %.1f", stats.percentile(0.5f),
+               stats.percentile(0.9f), stats.percentile(0.99f), stats.percentile(1)));
+
+      System.out.println("slowest frames:");
+      boolean[] shown = new boolean[frames];
+      for (int k = 0; k < Math.min(SLOWEST, frames); k++) {
+         int worst = -1;
+         for (int i = 0; i < frames; i++) {
+            if (!shown[i] && (worst < 0 || nanos.get(i) > nanos.get(worst))) worst = i;
+         }
+         shown[worst] = true;
+         System.out.println(String.format("  step %8d  %d steps  %10.1f us  %6d bodies", starts.get(worst),
+                  counts.get(worst), nanos.get(worst) / 1000.0, bodies.get(worst)));
+      }
+
+      long checksum = sim.checksum();
+      boolean faithful = !recording.hasChecksum || checksum == recording.checksum;
+      if (!recording.hasChecksum) {
+         System.out.println("final state checksum " + checksum + ", the recording has none to compare");
+      } else if (faithful) {
+         System.out.println("final state checksum " + checksum + " matches the session");
+      } else {
+         System.err.println("final state checksum " + checksum + " differs from the session's "
+                  + recording.checksum + ", the replay is not faithful");
+      }
+
+      if (args.length > 1) {
+         PrintWriter out = new PrintWriter(new FileWriter(args[1]));
+         out.println("step,steps,us,bodies");
+         for (int i = 0; i < frames; i++) {
+            out.println(starts.get(i) + "," + counts.get(i) + "," + nanos.get(i) / 1000.0 + "," + bodies.get(i));
+         }
+         out.close();
+      }
+      sim.dispose();
+      if (!faithful) System.exit(1);
+   }
+}
@@ -0,0 +1,69 @@
+package com.tobykurien.gdx2d.headless;
+
+import java.nio.ByteBuffer;
+
+import com.tobykurien.gdx2d.BallPool;
+import com.tobykurien.gdx2d.Simulation;
+import com.tobykurien.gdx2d.WorldSnapshot;
+
+/**
+ * Saves and restores a scene of 1000, 10000 and 50000 balls with
+ * {@link WorldSnapshot}: snapshot size, save time into a reused buffer, and
+ * restore time into a new simulation, which includes creating the bodies.
+ * The balls sit on a grid and are stepped once, so some are asleep.
+ * <br/><br/>
+ *
+ * Usage: SnapshotBenchmark [bodies...]
+ */
+public class SnapshotBenchmark {
+   static final int[] DEFAULT_BODIES = { 1000, 10000, 50000 };
+   static final int RUNS = 5;
+
+   public static void main(String[] args) {
+      int[] sizes = DEFAULT_BODIES;
+      if (args.length > 0) {
+         sizes = new int[args.length];
+         for (int i = 0; i < args.length; i++) sizes[i] = Integer.parseInt(args[i]);
+      }
+      Headless.init();
+
+      System.out.println(String.format("%8s %10s %8s %12s %12s", "bodies", "bytes", "B/body", "save ms", "restore ms"));
+      for (int bodies : sizes) run(bodies);
+   }
+
+   private static void run(int count) {
+      Simulation sim = Headless.newSimulation();
+      BallPool balls = sim.getBalls();
+      int columns = (int) Math.sqrt(count);
+      float spacing = BallPool.BALL_RADIUS * 3;
+      for (int i = 0; i < count; i++) {
+         balls.obtain((i % columns - columns / 2) * spacing, 2 + (i / columns) * spacing);
+      }
+      sim.update(1 / 60f);
+
+      // best of a few runs, into the same buffer
+      ByteBuffer buffer = null;
+      float save = Float.MAX_VALUE;
+      for (int i = 0; i < RUNS; i++) {
+         long start = System.nanoTime();
+         buffer = WorldSnapshot.save(sim, buffer);
+         save = Math.min(save, (System.nanoTime() - start) / 1000000f);
+      }
+      sim.dispose();
+
+      float restore = Float.MAX_VALUE;
+      for (int i = 0; i < RUNS; i++) {
+         Simulation restored = Headless.newSimulation();
+         buffer.rewind();
+         long start = System.nanoTime();
+         WorldSnapshot.restore(restored, buffer);
+         restore = Math.min(restore, (System.nanoTime() - start) / 1000000f);
+         if (restored.getBallCount() != count) throw new AssertionError(restored.getBallCount() + " balls restored");
+         restored.dispose();
+      }
+
+      int bytes = buffer.limit();
+      System.out.println(String.format("%8d %10d %8.1f %12.2f %12.2f", count, bytes, (float) bytes / (count + 1), save,
+               restore));
+   }
+}
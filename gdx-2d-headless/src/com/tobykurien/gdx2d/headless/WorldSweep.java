@@ -0,0 +1,152 @@
+package com.tobykurien.gdx2d.headless;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.badlogic.gdx.utils.TimeUtils;
+import com.tobykurien.gdx2d.BodyEditorLoader;
+import com.tobykurien.gdx2d.Simulation;
+
+/**
+ * Runs the bottle-and-balls scene for every combination of ball friction,
+ * restitution and spawn rate, each in its own World, in parallel on a
+ * work-stealing pool. The model is parsed once; every worker thread wraps
+ * the same read-only model in a loader of its own.
+ * <br/><br/>
+ *
+ * Prints one line per world: balls spawned, balls still in the bottle at
+ * the end, balls lost, the score, contacts, and the wall, CPU and step
+ * time of the run.
+ * <br/><br/>
+ *
+ * Usage: WorldSweep [threads] [seconds]
+ */
+public class WorldSweep {
+   static final float STEP = 1 / 60f;
+   static final float[] FRICTION = { 0.1f, 0.4f, 0.8f };
+   static final float[] RESTITUTION = { 0, 0.3f, 0.6f };
+   /** Balls spawned per second. */
+   static final float[] SPAWN_RATE = { 5, 10, 30 };
+
+   /** The parameters of one world. */
+   static class Params {
+      final float friction, restitution, spawnRate;
+
+      Params(float friction, float restitution, float spawnRate) {
+         this.friction = friction;
+         this.restitution = restitution;
+         this.spawnRate = spawnRate;
+      }
+   }
+
+   /** What one world ended up with. */
+   static class Result {
+      Params params;
+      String thread;
+      int spawned, kept, lost, score, contacts;
+      float wallMillis, cpuMillis, stepMillis;
+
+      static String header() {
+         return String.format("%8s %7s %6s %7s %5s %5s %5s %8s %9s %9s %9s  %s", "friction", "restit",
+                  "rate", "spawned", "kept", "lost", "score", "contacts", "wall ms", "cpu ms", "step ms", "thread");
+      }
+
+      @Override
+      public String toString() {
+         return String.format("%8.2f %7.2f %6.0f %7d %5d %5d %5d %8d %9.1f %9.1f %9.1f  %s",
+                  params.friction, params.restitution, params.spawnRate, spawned, kept, lost, score, contacts, wallMillis, cpuMillis,
+                  stepMillis, thread);
+      }
+   }
+
+   /** Steps one world to the end, on whichever worker picks it up. */
+   static class Run extends RecursiveTask<Result> {
+      private static final long serialVersionUID = 1L;
+
+      final BodyEditorLoader.Model model;
+      final ThreadLocal<BodyEditorLoader> loaders;
+      final Params params;
+      final int steps;
+
+      Run(BodyEditorLoader.Model model, ThreadLocal<BodyEditorLoader> loaders, Params params, int steps) {
+         this.model = model;
+         this.loaders = loaders;
+         this.params = params;
+         this.steps = steps;
+      }
+
+      @Override
+      protected Result compute() {
+         BodyEditorLoader loader = loaders.get();
+         if (loader == null) {
+            loader = new BodyEditorLoader(model);
+            loaders.set(loader);
+         }
+
+         long start = TimeUtils.nanoTime();
+         long cpuStart = Headless.cpuNanos();
+         Result result = new Result();
+         result.params = params;
+         result.thread = Thread.currentThread().getName();
+         Simulation sim = new Simulation(loader, null, null);
+         sim.getBalls().setMaterial(params.friction, params.restitution);
+
+         float spawnTime = 0;
+         for (int i = 0; i < steps; i++) {
+            spawnTime += STEP;
+            while (spawnTime >= 1 / params.spawnRate) {
+               spawnTime -= 1 / params.spawnRate;
+               sim.spawnBall();
+               result.spawned++;
+            }
+            sim.update(STEP);
+            result.lost += sim.getRecycled();
+            result.stepMillis += sim.getStepMillis();
+         }
+         result.kept = result.spawned - result.lost;
+         result.score = sim.getScore();
+         result.contacts = sim.getContactCount();
+         sim.dispose();
+         result.wallMillis = (TimeUtils.nanoTime() - start) / 1000000f;
+         result.cpuMillis = (Headless.cpuNanos() - cpuStart) / 1000000f;
+         return result;
+      }
+   }
+
+   public static void main(String[] args) {
+      int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+      float seconds = args.length > 1 ? Float.parseFloat(args[1]) : 30;
+      int steps = (int) (seconds / STEP);
+
+      BodyEditorLoader.Model model = Headless.loadModel().getInternalModel();
+      ThreadLocal<BodyEditorLoader> loaders = new ThreadLocal<BodyEditorLoader>();
+      List<Run> runs = new ArrayList<Run>();
+      for (float friction : FRICTION) {
+         for (float restitution : RESTITUTION) {
+            for (float rate : SPAWN_RATE) {
+               runs.add(new Run(model, loaders, new Params(friction, restitution, rate), steps));
+            }
+         }
+      }
+
+      System.out.println(runs.size() + " worlds, " + seconds + " s each, " + threads + " threads");
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      long start = TimeUtils.nanoTime();
+      for (Run run : runs) pool.execute(run);
+      float cpuMillis = 0;
+      System.out.println(Result.header());
+      for (Run run : runs) {
+         Result result = run.join();
+         cpuMillis += result.cpuMillis;
+         System.out.println(result);
+      }
+      float wallMillis = (TimeUtils.nanoTime() - start) / 1000000f;
+      pool.shutdown();
+
+      // how many cores were kept busy on average
+      System.out.println(String.format("total %.0f ms wall, %.0f ms cpu, %.1fx parallel", wallMillis, cpuMillis,
+               cpuMillis / wallMillis));
+   }
+}
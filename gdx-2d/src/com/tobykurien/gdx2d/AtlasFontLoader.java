@@ -0,0 +1,69 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.assets.AssetDescriptor;
+import com.badlogic.gdx.assets.AssetLoaderParameters;
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.assets.loaders.AsynchronousAssetLoader;
+import com.badlogic.gdx.assets.loaders.FileHandleResolver;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.BitmapFont.BitmapFontData;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas.AtlasRegion;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * Loads a {@link BitmapFont} whose page was packed into a
+ * {@link TextureAtlas}, so text is drawn from the same texture as the
+ * sprites. The .fnt file is parsed on the manager's loading thread. Only
+ * fonts with a single page are supported.
+ * <br/><br/>
+ *
+ * The atlas is loaded as a dependency; load fonts with {@link Parameters}
+ * naming the atlas and the page's region.
+ */
+public class AtlasFontLoader extends AsynchronousAssetLoader<BitmapFont, AtlasFontLoader.Parameters> {
+   public static class Parameters extends AssetLoaderParameters<BitmapFont> {
+      public String atlas;
+      public String region;
+
+      public Parameters(String atlas, String region) {
+         this.atlas = atlas;
+         this.region = region;
+      }
+   }
+
+   // handed from loadAsync to loadSync, the manager loads one asset at a time
+   private BitmapFontData data;
+
+   public AtlasFontLoader(FileHandleResolver resolver) {
+      super(resolver);
+   }
+
+   @SuppressWarnings("rawtypes")
+   @Override
+   public Array<AssetDescriptor> getDependencies(String fileName, FileHandle file, Parameters parameter) {
+      if (parameter == null) throw new GdxRuntimeException("No atlas given for font: " + fileName);
+      Array<AssetDescriptor> deps = new Array<AssetDescriptor>();
+      deps.add(new AssetDescriptor<TextureAtlas>(parameter.atlas, TextureAtlas.class));
+      return deps;
+   }
+
+   @Override
+   public void loadAsync(AssetManager manager, String fileName, FileHandle file, Parameters parameter) {
+      data = new BitmapFontData(file, false);
+      if (data.getImagePaths().length != 1) {
+         throw new GdxRuntimeException("Font must have a single page: " + fileName);
+      }
+   }
+
+   @Override
+   public BitmapFont loadSync(AssetManager manager, String fileName, FileHandle file, Parameters parameter) {
+      AtlasRegion region = manager.get(parameter.atlas, TextureAtlas.class).findRegion(parameter.region);
+      if (region == null) throw new GdxRuntimeException("Region " + parameter.region + " not in " + parameter.atlas);
+      BitmapFont font = new BitmapFont(data, region, true);
+      data = null;
+      return font;
+   }
+}
@@ -0,0 +1,190 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.BodyDef.BodyType;
+import com.badlogic.gdx.physics.box2d.CircleShape;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.FixtureDef;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * Recycles ball bodies instead of destroying them. A ball that leaves the
+ * view is deactivated (which takes it out of the broadphase) and kept for
+ * the next spawn, together with its sprite. All balls share one texture
+ * region, so spawning never touches native Box2D memory or the GPU once the
+ * pool is warm.
+ */
+public class BallPool implements Disposable {
+   public static final float BALL_RADIUS = 0.03f;
+
+   private final World world;
+   private final TextureRegion region;
+   private final int capacity;
+   private final Array<Body> free;
+
+   // Reusable stuff
+   private final BodyDef bd = new BodyDef();
+   private final FixtureDef fixtureDef = new FixtureDef();
+   private final CircleShape circle = new CircleShape();
+
+   private int hits;
+   private int misses;
+   private int active;
+
+   /**
+    * @param world The world the balls live in.
+    * @param region The texture region shared by all ball sprites.
+    * @param capacity The maximum number of inactive balls kept for reuse.
+    *        Balls freed beyond this are destroyed.
+    */
+   public BallPool(World world, TextureRegion region, int capacity) {
+      if (world == null) throw new NullPointerException("world is null");
+      if (capacity < 0) throw new IllegalArgumentException("capacity < 0");
+      this.world = world;
+      this.region = region;
+      this.capacity = capacity;
+      this.free = new Array<Body>(false, capacity);
+
+      bd.type = BodyType.DynamicBody;
+      fixtureDef.density = 0.7f;
+      fixtureDef.friction = 0.4f;
+      fixtureDef.restitution = 0.3f;
+      circle.setRadius(BALL_RADIUS);
+      fixtureDef.shape = circle;
+   }
+
+   /**
+    * Returns an active ball at the given position, reusing a pooled one if
+    * there is one. The sprite is available through the body's user data.
+    */
+   public Body obtain(float x, float y) {
+      return obtain(x, y, 0, 0, 0, 0, true);
+   }
+
+   /**
+    * Returns an active ball placed and moving as given, e.g. as it was saved
+    * in a {@link WorldSnapshot}. A new ball is created in this state rather
+    * than moved into it.
+    */
+   public Body obtain(float x, float y, float angle, float velocityX, float velocityY, float angularVelocity,
+            boolean awake) {
+      Body body;
+      if (free.size > 0) {
+         hits++;
+         body = free.pop();
+         body.setActive(true);
+         body.setTransform(x, y, angle);
+         body.setLinearVelocity(velocityX, velocityY);
+         body.setAngularVelocity(angularVelocity);
+         body.setAwake(awake);
+      } else {
+         misses++;
+         bd.position.set(x, y);
+         bd.angle = angle;
+         bd.linearVelocity.set(velocityX, velocityY);
+         bd.angularVelocity = angularVelocity;
+         bd.awake = awake;
+         body = newBall();
+      }
+
+      BodySprite sprite = (BodySprite) body.getUserData();
+      sprite.setAnimationScale(1, 1);
+      sprite.restTime = 0;
+      sprite.scored = false;
+      sprite.savePrevious(body);
+      active++;
+      return body;
+   }
+
+   /**
+    * Takes the ball out of the simulation. It is kept for reuse if the pool
+    * has room, otherwise it is destroyed.
+    */
+   public void free(Body body) {
+      active--;
+      if (free.size < capacity) {
+         body.setActive(false);
+         free.add(body);
+      } else {
+         world.destroyBody(body);
+      }
+   }
+
+   /** Destroys an obtained ball instead of keeping it for reuse. */
+   public void destroy(Body body) {
+      active--;
+      world.destroyBody(body);
+   }
+
+   /**
+    * Destroys all pooled balls. Active balls are not affected.
+    */
+   public void clear() {
+      for (int i = 0; i < free.size; i++) {
+         world.destroyBody(free.get(i));
+      }
+      free.clear();
+   }
+
+   /**
+    * Sets the friction and restitution of new balls and of the pooled ones.
+    * Balls that are active keep theirs until they are recycled.
+    */
+   public void setMaterial(float friction, float restitution) {
+      fixtureDef.friction = friction;
+      fixtureDef.restitution = restitution;
+      for (int i = 0; i < free.size; i++) {
+         Array<Fixture> fixtures = free.get(i).getFixtureList();
+         for (int f = 0; f < fixtures.size; f++) {
+            fixtures.get(f).setFriction(friction);
+            fixtures.get(f).setRestitution(restitution);
+         }
+      }
+   }
+
+   public int getCapacity() {
+      return capacity;
+   }
+
+   /** Number of inactive balls waiting for reuse. */
+   public int getFree() {
+      return free.size;
+   }
+
+   /** Number of balls obtained and not freed yet. */
+   public int getActive() {
+      return active;
+   }
+
+   /** Number of spawns served from the pool. */
+   public int getHits() {
+      return hits;
+   }
+
+   /** Number of spawns that had to create a new body. */
+   public int getMisses() {
+      return misses;
+   }
+
+   /** Frees the shape shared by the balls; the balls go with the world. */
+   @Override
+   public void dispose() {
+      circle.dispose();
+   }
+
+   private Body newBall() {
+      Body body = world.createBody(bd);
+      body.createFixture(fixtureDef);
+
+      // size the sprite to match the circle, with its origin at the center
+      BodySprite sprite = region != null ? new BodySprite(region) : new BodySprite();
+      sprite.setSize(BALL_RADIUS * 2, BALL_RADIUS * 2);
+      sprite.setOrigin(BALL_RADIUS, BALL_RADIUS);
+      body.setUserData(sprite);
+      return body;
+   }
+}
@@ -0,0 +1,276 @@
+package com.tobykurien.gdx2d;
+
+import java.util.Comparator;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.BodyDef.BodyType;
+import com.badlogic.gdx.physics.box2d.CircleShape;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.FixtureDef;
+import com.badlogic.gdx.physics.box2d.QueryCallback;
+import com.badlogic.gdx.physics.box2d.Shape;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.IntMap;
+
+/**
+ * Takes balls that have come to rest out of the simulation. A ball that
+ * stays below the rest speed for long enough is "baked": its body is
+ * deactivated and a copy of its circle goes onto a static body shared by
+ * all baked balls in the same grid cell. Other balls still land on it, but
+ * the solver no longer has to hold the pile up, and a pile can't be woken
+ * as a whole.
+ * <br/><br/>
+ *
+ * A dynamic body moving faster than the disturb speed inside a cell
+ * un-bakes that cell: the static body goes and its balls are dynamic again,
+ * where they were. Neighbouring cells stay baked and hold them up.
+ * <br/><br/>
+ *
+ * Balls are baked in order of position rather than in the world's body
+ * order, which follows native addresses, so that a replay bakes them the
+ * same way as the session did.
+ * <br/><br/>
+ *
+ * Baked balls keep their sprite. Each baked fixture has the ball's body as
+ * its user data, which is how {@link VisibleBodies} still reports them, and
+ * {@link #getCells()} lists them for the {@link TransformSnapshot}.
+ */
+public class BallSettler implements Disposable, QueryCallback {
+   static final float DEFAULT_REST_SPEED = 0.02f;
+   static final float DEFAULT_REST_TIME = 1;
+   static final float DEFAULT_DISTURB_SPEED = 1;
+   static final float DEFAULT_CELL_SIZE = 0.25f;
+
+   /** The balls baked into one grid cell. */
+   public static class Cell {
+      final int key;
+      final Body body;
+      /** The deactivated balls, with their sprites. */
+      public final Array<Body> balls = new Array<Body>();
+      // bounds of the baked circles, can be larger than the cell
+      float left = Float.MAX_VALUE, bottom = Float.MAX_VALUE;
+      float right = -Float.MAX_VALUE, top = -Float.MAX_VALUE;
+
+      Cell(int key, Body body) {
+         this.key = key;
+         this.body = body;
+      }
+
+      void include(float x, float y, float radius) {
+         left = Math.min(left, x - radius);
+         bottom = Math.min(bottom, y - radius);
+         right = Math.max(right, x + radius);
+         top = Math.max(top, y + radius);
+      }
+   }
+
+   private final World world;
+   private float restSpeed = DEFAULT_REST_SPEED;
+   private float restTime = DEFAULT_REST_TIME;
+   private float disturbSpeed = DEFAULT_DISTURB_SPEED;
+   private final float cellSize;
+
+   private final IntMap<Cell> cellMap = new IntMap<Cell>();
+   private final Array<Cell> cells = new Array<Cell>();
+   private int baked;
+
+   // Reusable stuff
+   private final BodyDef cellDef = new BodyDef();
+   private final FixtureDef fixtureDef = new FixtureDef();
+   private final CircleShape circle = new CircleShape();
+   private final Vector2 center = new Vector2();
+   private final Array<Cell> disturbed = new Array<Cell>();
+   private final Array<Body> unbaked = new Array<Body>();
+   private final Array<Body> resting = new Array<Body>();
+   private final Comparator<Body> byPosition = new Comparator<Body>() {
+      @Override
+      public int compare(Body a, Body b) {
+         Vector2 pa = a.getPosition(), pb = b.getPosition();
+         int c = Float.compare(pa.y, pb.y);
+         return c != 0 ? c : Float.compare(pa.x, pb.x);
+      }
+   };
+   private Cell queried;
+
+   public BallSettler(World world) {
+      this(world, DEFAULT_CELL_SIZE);
+   }
+
+   /** @param cellSize Width and height of the cells balls are baked into. */
+   public BallSettler(World world, float cellSize) {
+      if (cellSize <= 0) throw new IllegalArgumentException("cellSize <= 0");
+      this.world = world;
+      this.cellSize = cellSize;
+      cellDef.type = BodyType.StaticBody;
+      fixtureDef.shape = circle;
+   }
+
+   /**
+    * Un-bakes disturbed cells, then bakes balls that have been at rest for
+    * long enough. Call after the world was stepped. The bodies of un-baked
+    * cells are destroyed last, so they are still valid while the bodies are
+    * looked at, but the array holds destroyed bodies afterwards; get the
+    * world's bodies again before using it.
+    *
+    * @param bodies The bodies in the world.
+    * @param delta The simulated time since the last call.
+    * @param exclude A body never to bake, e.g. the bottle; may be null.
+    */
+   public void update(Array<Body> bodies, float delta, Body exclude) {
+      disturbed.clear();
+      for (int i = 0, n = cells.size; i < n; i++) {
+         // only around the baked circles, not the empty part of the cell
+         queried = cells.get(i);
+         world.QueryAABB(this, queried.left, queried.bottom, queried.right, queried.top);
+      }
+      queried = null;
+      for (int i = 0, n = disturbed.size; i < n; i++) unbake(disturbed.get(i));
+
+      float restSpeed2 = restSpeed * restSpeed;
+      for (int i = 0, n = bodies.size; i < n; i++) {
+         Body b = bodies.get(i);
+         if (b == exclude || !b.isActive() || b.getType() != BodyType.DynamicBody) continue;
+         if (!(b.getUserData() instanceof BodySprite)) continue;
+         float radius = radius(b);
+         if (radius <= 0) continue;
+
+         // a spinning ball rests when its rim is as slow as a resting ball
+         BodySprite sprite = (BodySprite) b.getUserData();
+         if (b.getLinearVelocity().len2() > restSpeed2 || Math.abs(b.getAngularVelocity()) * radius > restSpeed) {
+            sprite.restTime = 0;
+         } else if ((sprite.restTime += delta) >= restTime) {
+            resting.add(b);
+         }
+      }
+      if (resting.size > 1) resting.sort(byPosition);
+      for (int i = 0, n = resting.size; i < n; i++) bake(resting.get(i));
+      resting.clear();
+      destroyUnbaked();
+   }
+
+   @Override
+   public boolean reportFixture(Fixture fixture) {
+      Body b = fixture.getBody();
+      if (b.getType() != BodyType.DynamicBody || b.getLinearVelocity().len2() <= disturbSpeed * disturbSpeed) {
+         return true;
+      }
+      // the broadphase reports fattened bounds, check the real ones
+      Vector2 p = b.getPosition();
+      float r = fixture.getShape().getRadius();
+      if (p.x + r < queried.left || p.x - r > queried.right || p.y + r < queried.bottom || p.y - r > queried.top) {
+         return true;
+      }
+      if (!disturbed.contains(queried, true)) disturbed.add(queried);
+      return false;
+   }
+
+   /** Turns all baked balls back into dynamic bodies. */
+   public void unbakeAll() {
+      while (cells.size > 0) unbake(cells.peek());
+      destroyUnbaked();
+   }
+
+   /** The largest circle of the body, or 0 if it has other shapes. */
+   private static float radius(Body b) {
+      Array<Fixture> fixtures = b.getFixtureList();
+      float radius = 0;
+      for (int i = 0; i < fixtures.size; i++) {
+         Fixture f = fixtures.get(i);
+         if (f.getType() != Shape.Type.Circle) return 0;
+         radius = Math.max(radius, f.getShape().getRadius());
+      }
+      return radius;
+   }
+
+   private void bake(Body ball) {
+      Array<Fixture> fixtures = ball.getFixtureList();
+      Vector2 position = ball.getPosition();
+      int cx = (int) Math.floor(position.x / cellSize);
+      int cy = (int) Math.floor(position.y / cellSize);
+      int key = (cx & 0xffff) << 16 | (cy & 0xffff);
+      Cell cell = cellMap.get(key);
+      if (cell == null) {
+         cell = new Cell(key, world.createBody(cellDef));
+         cellMap.put(key, cell);
+         cells.add(cell);
+      }
+
+      for (int i = 0; i < fixtures.size; i++) {
+         Fixture f = fixtures.get(i);
+         CircleShape shape = (CircleShape) f.getShape();
+         circle.setRadius(shape.getRadius());
+         circle.setPosition(center.set(ball.getWorldPoint(shape.getPosition())));
+         cell.include(center.x, center.y, shape.getRadius());
+         fixtureDef.density = f.getDensity();
+         fixtureDef.friction = f.getFriction();
+         fixtureDef.restitution = f.getRestitution();
+         fixtureDef.filter.categoryBits = f.getFilterData().categoryBits;
+         fixtureDef.filter.maskBits = f.getFilterData().maskBits;
+         fixtureDef.filter.groupIndex = f.getFilterData().groupIndex;
+         cell.body.createFixture(fixtureDef).setUserData(ball);
+      }
+
+      ball.setActive(false);
+      ((BodySprite) ball.getUserData()).savePrevious(ball);
+      cell.balls.add(ball);
+      baked++;
+   }
+
+   private void unbake(Cell cell) {
+      for (int i = 0, n = cell.balls.size; i < n; i++) {
+         Body ball = cell.balls.get(i);
+         ball.setActive(true);
+         ball.setAwake(true);
+         ball.setLinearVelocity(0, 0);
+         ball.setAngularVelocity(0);
+         ((BodySprite) ball.getUserData()).restTime = 0;
+      }
+      baked -= cell.balls.size;
+      unbaked.add(cell.body);
+      cellMap.remove(cell.key);
+      cells.removeValue(cell, true);
+   }
+
+   private void destroyUnbaked() {
+      for (int i = 0, n = unbaked.size; i < n; i++) world.destroyBody(unbaked.get(i));
+      unbaked.clear();
+   }
+
+   /** Cells that have baked balls. Do not modify. */
+   public Array<Cell> getCells() {
+      return cells;
+   }
+
+   /** Number of balls currently baked. */
+   public int getBaked() {
+      return baked;
+   }
+
+   /** Speed (m/s) below which a ball counts as resting. */
+   public void setRestSpeed(float restSpeed) {
+      this.restSpeed = restSpeed;
+   }
+
+   /** How long (s) a ball has to rest before it is baked. */
+   public void setRestTime(float restTime) {
+      this.restTime = restTime;
+   }
+
+   /** Speed (m/s) of a body in a cell above which the cell is un-baked. */
+   public void setDisturbSpeed(float disturbSpeed) {
+      this.disturbSpeed = disturbSpeed;
+   }
+
+   public float getCellSize() {
+      return cellSize;
+   }
+
+   @Override
+   public void dispose() {
+      circle.dispose();
+   }
+}
@@ -0,0 +1,75 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.assets.AssetDescriptor;
+import com.badlogic.gdx.assets.AssetLoaderParameters;
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.assets.loaders.AsynchronousAssetLoader;
+import com.badlogic.gdx.assets.loaders.FileHandleResolver;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/**
+ * Loads a {@link BodyEditorLoader} through an {@link AssetManager}. The file
+ * is read and parsed on the manager's loading thread, JSON or compiled
+ * alike; nothing is left for the GL thread.
+ * <br/><br/>
+ *
+ * Parsed models are kept for the life of the process, by file name, so a
+ * game that is disposed and created again (e.g. an Android activity that was
+ * paused and rebuilt) gets its models without reading them again. The
+ * models are shared read-only, every load gets a loader of its own.
+ */
+public class BodyEditorAssetLoader extends AsynchronousAssetLoader<BodyEditorLoader, BodyEditorAssetLoader.Parameters> {
+   private static final ObjectMap<String, BodyEditorLoader.Model> models = new ObjectMap<String, BodyEditorLoader.Model>();
+
+   public static class Parameters extends AssetLoaderParameters<BodyEditorLoader> {
+   }
+
+   // handed from loadAsync to loadSync, the manager loads one asset at a time
+   private BodyEditorLoader.Model model;
+
+   public BodyEditorAssetLoader(FileHandleResolver resolver) {
+      super(resolver);
+   }
+
+   @Override
+   public void loadAsync(AssetManager manager, String fileName, FileHandle file, Parameters parameter) {
+      synchronized (models) {
+         model = models.get(fileName);
+      }
+      if (model == null) {
+         model = new BodyEditorLoader(file).getInternalModel();
+         synchronized (models) {
+            models.put(fileName, model);
+         }
+      }
+   }
+
+   @Override
+   public BodyEditorLoader loadSync(AssetManager manager, String fileName, FileHandle file, Parameters parameter) {
+      BodyEditorLoader loader = new BodyEditorLoader(model);
+      model = null;
+      return loader;
+   }
+
+   @SuppressWarnings("rawtypes")
+   @Override
+   public Array<AssetDescriptor> getDependencies(String fileName, FileHandle file, Parameters parameter) {
+      return null;
+   }
+
+   /** Whether a model for the file name was parsed already. */
+   public static boolean isCached(String fileName) {
+      synchronized (models) {
+         return models.containsKey(fileName);
+      }
+   }
+
+   /** Forgets all parsed models, e.g. after the files changed. */
+   public static void clearCache() {
+      synchronized (models) {
+         models.clear();
+      }
+   }
+}
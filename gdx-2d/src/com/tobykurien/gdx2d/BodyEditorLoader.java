@@ -8,9 +8,14 @@ import com.badlogic.gdx.physics.box2d.FixtureDef;
 import com.badlogic.gdx.physics.box2d.PolygonShape;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.FloatArray;
 import com.badlogic.gdx.utils.JsonValue;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import com.badlogic.gdx.utils.ObjectMap;
 import com.badlogic.gdx.utils.OrderedMap;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,6 +24,23 @@ import java.util.Map;
  * Loads the collision fixtures defined with the Physics Body Editor
  * application. You only need to give it a body and the corresponding fixture
  * name, and it will attach these fixtures to your body.
+ * <br/><br/>
+ *
+ * In lazy mode the file is only indexed up front, and each rigid body is
+ * built the first time it is asked for. An optional bound on the number of
+ * built bodies evicts the least used ones.
+ * <br/><br/>
+ *
+ * A lazy JSON loader keeps the text of each body until the body is built,
+ * and for the loader's lifetime if built bodies are bounded, since an
+ * evicted body is built again. That text takes several times the memory
+ * of the built body, so lazy JSON trades memory for startup time; the
+ * compiled form is indexed in place and doesn't.
+ * <br/><br/>
+ *
+ * Vertices are kept as flat float arrays, and the scaled, origin-shifted
+ * shapes are cached per name and scale, so attaching the same body at the
+ * same scale again does no per-vertex math and allocates nothing.
  *
  * @author Aurelien Ribon | http://www.aurelienribon.com
  */
@@ -27,24 +49,86 @@ public class BodyEditorLoader {
    // Model
    private final Model model;
 
+   // Lazy loading, the sources to build bodies from
+   private final Map<String, int[]> index; // compiled: name -> offset, length
+   private final Map<String, char[]> json; // name -> the body's JSON object
+   private final ByteBuffer compiled;
+   private final int maxCached;
+   private final ObjectIntMap<String> uses = new ObjectIntMap<String>();
+
+   // Scaled shapes, per name and then per scale
+   private final ObjectMap<String, Array<ScaledShapes>> scaledShapes = new ObjectMap<String, Array<ScaledShapes>>();
+
    // Reusable stuff
-   private final List<Vector2> vectorPool = new ArrayList<Vector2>();
    private final PolygonShape polygonShape = new PolygonShape();
    private final CircleShape circleShape = new CircleShape();
    private final Vector2 vec = new Vector2();
+   private final FloatArray coords = new FloatArray();
 
    // -------------------------------------------------------------------------
    // Ctors
    // -------------------------------------------------------------------------
 
+   /**
+    * Loads the file saved from the editor, or its compiled form if the file
+    * ends in ".bem" (see {@link CompiledModel}).
+    */
    public BodyEditorLoader(FileHandle file) {
+      this(file, false, 0);
+   }
+
+   /**
+    * @param lazy Only index the file now and build each body on first use.
+    * @param maxCached In lazy mode, the most bodies to keep built at a time,
+    *        or 0 for no limit.
+    */
+   public BodyEditorLoader(FileHandle file, boolean lazy, int maxCached) {
       if (file == null) throw new NullPointerException("file is null");
-      model = readJson(file.readString());
+      if (maxCached < 0) throw new IllegalArgumentException("maxCached < 0");
+      this.maxCached = maxCached;
+
+      if (!lazy) {
+         model = CompiledModel.isCompiled(file) ? CompiledModel.read(file) : readJson(file.readString());
+         index = null;
+         json = null;
+         compiled = null;
+      } else if (CompiledModel.isCompiled(file)) {
+         model = new Model();
+         index = new HashMap<String, int[]>();
+         json = null;
+         compiled = CompiledModel.open(file);
+         CompiledModel.index(compiled, index);
+      } else {
+         model = new Model();
+         index = null;
+         json = new HashMap<String, char[]>();
+         compiled = null;
+         indexJson(file.readString().toCharArray(), json);
+      }
    }
 
    public BodyEditorLoader(String str) {
       if (str == null) throw new NullPointerException("str is null");
       model = readJson(str);
+      index = null;
+      json = null;
+      compiled = null;
+      maxCached = 0;
+   }
+
+   /**
+    * Uses a model that was already loaded, e.g. by another loader. The
+    * model is only read, so loaders on several threads can share one as
+    * long as nobody changes it; each loader has its own shape cache and
+    * scratch shapes. The model must be complete, not that of a lazy loader.
+    */
+   public BodyEditorLoader(Model model) {
+      if (model == null) throw new NullPointerException("model is null");
+      this.model = model;
+      index = null;
+      json = null;
+      compiled = null;
+      maxCached = 0;
    }
 
    // -------------------------------------------------------------------------
@@ -76,40 +160,20 @@ public class BodyEditorLoader {
     * @param scale The desired scale of the body. The default width is 1.
     */
    public void attachFixture(Body body, String name, FixtureDef fd, float scale) {
-      RigidBodyModel rbModel = model.rigidBodies.get(name);
-      if (rbModel == null) throw new RuntimeException("Name '" + name + "' was not found.");
-
-      Vector2 origin = vec.set(rbModel.origin).mul(scale);
-
-      for (int i=0, n=rbModel.polygons.size(); i<n; i++) {
-         PolygonModel polygon = rbModel.polygons.get(i);
-         Vector2[] vertices = polygon.buffer;
-
-         for (int ii=0, nn=vertices.length; ii<nn; ii++) {
-            vertices[ii] = newVec().set(polygon.vertices.get(ii)).mul(scale);
-            vertices[ii].sub(origin);
-         }
+      ScaledShapes shapes = getScaledShapes(name, scale);
 
-         polygonShape.set(vertices);
+      for (int i=0, n=shapes.polygons.length; i<n; i++) {
+         polygonShape.set(shapes.polygons[i]);
          fd.shape = polygonShape;
          body.createFixture(fd);
-
-         for (int ii=0, nn=vertices.length; ii<nn; ii++) {
-            free(vertices[ii]);
-         }
       }
 
-      for (int i=0, n=rbModel.circles.size(); i<n; i++) {
-         CircleModel circle = rbModel.circles.get(i);
-         Vector2 center = newVec().set(circle.center).mul(scale);
-         float radius = circle.radius * scale;
-
-         circleShape.setPosition(center);
-         circleShape.setRadius(radius);
+      float[] circles = shapes.circles;
+      for (int i=0, n=circles.length; i<n; i+=3) {
+         circleShape.setPosition(vec.set(circles[i], circles[i+1]));
+         circleShape.setRadius(circles[i+2]);
          fd.shape = circleShape;
          body.createFixture(fd);
-
-         free(center);
       }
    }
 
@@ -117,8 +181,7 @@ public class BodyEditorLoader {
     * Gets the image path attached to the given name.
     */
    public String getImagePath(String name) {
-      RigidBodyModel rbModel = model.rigidBodies.get(name);
-      if (rbModel == null) throw new RuntimeException("Name '" + name + "' was not found.");
+      RigidBodyModel rbModel = getModel(name);
 
       return rbModel.imagePath;
    }
@@ -130,8 +193,7 @@ public class BodyEditorLoader {
     * copy it if you need it for later use.
     */
    public Vector2 getOrigin(String name, float scale) {
-      RigidBodyModel rbModel = model.rigidBodies.get(name);
-      if (rbModel == null) throw new RuntimeException("Name '" + name + "' was not found.");
+      RigidBodyModel rbModel = getModel(name);
 
       return vec.set(rbModel.origin).mul(scale);
    }
@@ -139,12 +201,41 @@ public class BodyEditorLoader {
    /**
     * <b>For advanced users only.</b> Lets you access the internal model of
     * this loader and modify it. Be aware that any modification is permanent
-    * and that you should really know what you are doing.
+    * and that you should really know what you are doing. In lazy mode it
+    * only holds the bodies built so far. Call {@link #clearShapeCache()}
+    * after changing a body that was already attached.
     */
    public Model getInternalModel() {
       return model;
    }
 
+   /**
+    * Merges adjacent polygons of the named body into larger convex ones,
+    * which cuts its fixture count (see {@link PolygonMerger}). Affects
+    * bodies attached from now on.
+    *
+    * @param areaTolerance How much area a merge may add, as a fraction of
+    *        the merged polygons' area, e.g. 0.05 for 5%.
+    * @return The polygon count before and after the merge.
+    */
+   public MergeResult mergePolygons(String name, float areaTolerance) {
+      RigidBodyModel rbModel = getModel(name);
+      MergeResult result = new MergeResult();
+      result.before = rbModel.polygons.size();
+      PolygonMerger.merge(rbModel.polygons, areaTolerance);
+      result.after = rbModel.polygons.size();
+      scaledShapes.remove(name);
+      return result;
+   }
+
+   /**
+    * Forgets the scaled shapes built by
+    * {@link #attachFixture(Body, String, FixtureDef, float)}.
+    */
+   public void clearShapeCache() {
+      scaledShapes.clear();
+   }
+
    // -------------------------------------------------------------------------
    // Json Models
    // -------------------------------------------------------------------------
@@ -162,8 +253,13 @@ public class BodyEditorLoader {
    }
 
    public static class PolygonModel {
-      public final List<Vector2> vertices = new ArrayList<Vector2>();
-      private Vector2[] buffer; // used to avoid allocation in attachFixture()
+      /** x and y of every vertex, one after the other. */
+      public float[] vertices;
+   }
+
+   public static class MergeResult {
+      public int before;
+      public int after;
    }
 
    public static class CircleModel {
@@ -206,14 +302,12 @@ public class BodyEditorLoader {
          rbModel.polygons.add(polygon);
 
          JsonValue vertexElem = polygonsElem.child();
+         coords.clear();
          for (; vertexElem != null; vertexElem = vertexElem.next()) {
-            float x = vertexElem.getFloat("x");
-            float y = vertexElem.getFloat("y");
-            polygon.vertices.add(new Vector2(x, y));
+            coords.add(vertexElem.getFloat("x"));
+            coords.add(vertexElem.getFloat("y"));
          }
-
-         polygon.buffer = new Vector2[polygon.vertices.size()];
-
+         polygon.vertices = coords.toArray();
       }
 
       // circles
@@ -232,14 +326,182 @@ public class BodyEditorLoader {
    }
 
    // -------------------------------------------------------------------------
-   // Helpers
+   // Scaled shapes
    // -------------------------------------------------------------------------
 
-   private Vector2 newVec() {
-      return vectorPool.isEmpty() ? new Vector2() : vectorPool.remove(0);
+   /** A body's shapes at one scale, ready to hand to Box2D. */
+   private static class ScaledShapes {
+      float scale;
+      float[][] polygons; // x,y pairs, scaled and shifted by the origin
+      float[] circles; // cx,cy,r triples, scaled
+   }
+
+   private ScaledShapes getScaledShapes(String name, float scale) {
+      Array<ScaledShapes> byScale = scaledShapes.get(name);
+      if (byScale != null) {
+         for (int i=0; i<byScale.size; i++) {
+            if (byScale.get(i).scale == scale) {
+               if (maxCached > 0) uses.getAndIncrement(name, 0, 1);
+               return byScale.get(i);
+            }
+         }
+      } else {
+         byScale = new Array<ScaledShapes>(false, 2, ScaledShapes.class);
+         scaledShapes.put(name, byScale);
+      }
+
+      RigidBodyModel rbModel = getModel(name);
+      float originX = rbModel.origin.x * scale;
+      float originY = rbModel.origin.y * scale;
+
+      ScaledShapes shapes = new ScaledShapes();
+      shapes.scale = scale;
+      shapes.polygons = new float[rbModel.polygons.size()][];
+      for (int i=0, n=shapes.polygons.length; i<n; i++) {
+         float[] vertices = rbModel.polygons.get(i).vertices;
+         float[] scaled = shapes.polygons[i] = new float[vertices.length];
+         for (int ii=0, nn=vertices.length; ii<nn; ii+=2) {
+            scaled[ii] = vertices[ii] * scale - originX;
+            scaled[ii+1] = vertices[ii+1] * scale - originY;
+         }
+      }
+
+      shapes.circles = new float[rbModel.circles.size() * 3];
+      for (int i=0, c=0, n=rbModel.circles.size(); i<n; i++, c+=3) {
+         CircleModel circle = rbModel.circles.get(i);
+         shapes.circles[c] = circle.center.x * scale;
+         shapes.circles[c+1] = circle.center.y * scale;
+         shapes.circles[c+2] = circle.radius * scale;
+      }
+
+      byScale.add(shapes);
+      return shapes;
    }
 
-   private void free(Vector2 v) {
-      vectorPool.add(v);
+   // -------------------------------------------------------------------------
+   // Lazy loading
+   // -------------------------------------------------------------------------
+
+   private RigidBodyModel getModel(String name) {
+      RigidBodyModel rbModel = model.rigidBodies.get(name);
+      if (rbModel == null && json != null) {
+         char[] source = json.get(name);
+         if (source != null) {
+            if (maxCached > 0 && model.rigidBodies.size() >= maxCached) evict();
+            rbModel = readRigidBody(new JsonReader().parse(source, 0, source.length));
+            // never evicted, so never built again
+            if (maxCached == 0) json.remove(name);
+            model.rigidBodies.put(name, rbModel);
+         }
+      } else if (rbModel == null && index != null) {
+         int[] pos = index.get(name);
+         if (pos != null) {
+            if (maxCached > 0 && model.rigidBodies.size() >= maxCached) evict();
+            rbModel = CompiledModel.readBody(compiled, pos[0]);
+            model.rigidBodies.put(name, rbModel);
+         }
+      }
+      if (rbModel == null) throw new RuntimeException("Name '" + name + "' was not found.");
+
+      if (maxCached > 0) uses.getAndIncrement(name, 0, 1);
+      return rbModel;
+   }
+
+   /**
+    * Drops the least used body. Use counts are halved every time, so bodies
+    * that were popular a long time ago don't stay forever.
+    */
+   private void evict() {
+      String victim = null;
+      int least = Integer.MAX_VALUE;
+      for (String name : model.rigidBodies.keySet()) {
+         int n = uses.get(name, 0);
+         if (n < least) {
+            least = n;
+            victim = name;
+         }
+         uses.put(name, n / 2);
+      }
+      if (victim != null) {
+         model.rigidBodies.remove(victim);
+         scaledShapes.remove(victim);
+         uses.remove(victim, 0);
+      }
+   }
+
+   /**
+    * Finds each object in the "rigidBodies" array and its "name" with a
+    * single scan over the characters, without building any JSON values,
+    * and keeps a copy of each object's characters.
+    */
+   private static void indexJson(char[] data, Map<String, char[]> index) {
+      int depth = 0;
+      int bodiesDepth = -1; // depth inside the rigidBodies array
+      boolean bodiesNext = false;
+      int bodyStart = -1;
+      String bodyName = null;
+
+      for (int i = 0, n = data.length; i < n; i++) {
+         char c = data[i];
+         if (c == '"') {
+            int end = skipString(data, i);
+            int next = skipWhitespace(data, end + 1);
+            if (next < n && data[next] == ':') {
+               // a key, only the two we care about
+               if (depth == 1 && equals(data, i + 1, end, "rigidBodies")) {
+                  bodiesNext = true;
+               } else if (bodyStart >= 0 && depth == bodiesDepth + 1 && equals(data, i + 1, end, "name")) {
+                  int value = skipWhitespace(data, next + 1);
+                  if (value < n && data[value] == '"') {
+                     int valueEnd = skipString(data, value);
+                     bodyName = new String(data, value + 1, valueEnd - value - 1);
+                     next = valueEnd;
+                  }
+               }
+               i = next;
+            } else {
+               i = end;
+            }
+         } else if (c == '{' || c == '[') {
+            depth++;
+            if (bodiesNext && c == '[') {
+               bodiesDepth = depth;
+               bodiesNext = false;
+            } else if (c == '{' && depth == bodiesDepth + 1) {
+               bodyStart = i;
+               bodyName = null;
+            }
+         } else if (c == '}' || c == ']') {
+            if (c == '}' && bodyStart >= 0 && depth == bodiesDepth + 1) {
+               if (bodyName != null) index.put(bodyName, Arrays.copyOfRange(data, bodyStart, i + 1));
+               bodyStart = -1;
+            } else if (c == ']' && depth == bodiesDepth) {
+               return;
+            }
+            depth--;
+         }
+      }
+   }
+
+   /** Returns the index of the closing quote of the string starting at i. */
+   private static int skipString(char[] data, int i) {
+      for (i++; i < data.length; i++) {
+         if (data[i] == '\\') i++;
+         else if (data[i] == '"') return i;
+      }
+      return i;
+   }
+
+   private static int skipWhitespace(char[] data, int i) {
+      while (i < data.length && data[i] <= ' ') i++;
+      return i;
+   }
+
+   private static boolean equals(char[] data, int start, int end, String s) {
+      if (end - start != s.length()) return false;
+      for (int i = 0; i < s.length(); i++) {
+         if (data[start + i] != s.charAt(i)) return false;
+      }
+      return true;
    }
 }
\ No newline at end of file
@@ -0,0 +1,110 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.graphics.g2d.Sprite;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.physics.box2d.Body;
+
+/**
+ * A sprite attached to a body as its user data. Besides the usual sprite
+ * state it remembers the body transform before the last physics step, so
+ * that it can be drawn in between two steps when the frame rate and the
+ * physics rate differ.
+ * <br/><br/>
+ *
+ * Animations set the animation scale rather than the sprite scale. The two
+ * are kept apart so that, when physics runs on its own thread, only the
+ * render thread ever changes the sprite itself.
+ */
+public class BodySprite extends Sprite {
+   private float prevX;
+   private float prevY;
+   private float prevAngle;
+   private float animationScaleX = 1;
+   private float animationScaleY = 1;
+   /** Slot in the {@link ScaleAnimations} animating this sprite, or -1. */
+   int animation = -1;
+   /** How long the body has been at rest, for {@link BallSettler}. */
+   float restTime;
+   /** Whether the ball counts towards the {@link ScoreCounter}. */
+   boolean scored;
+   /** Drawn by the {@link StaticLayer} rather than every frame. */
+   boolean fixed;
+
+   public BodySprite() {
+   }
+
+   public BodySprite(TextureRegion region) {
+      super(region);
+   }
+
+   /**
+    * Records the current body transform as the previous state. Call before
+    * each step, and after moving the body by hand so it doesn't get
+    * interpolated from where it used to be.
+    */
+   public void savePrevious(Body body) {
+      prevX = body.getPosition().x;
+      prevY = body.getPosition().y;
+      prevAngle = body.getAngle();
+   }
+
+   public float getPrevX() {
+      return prevX;
+   }
+
+   public float getPrevY() {
+      return prevY;
+   }
+
+   public float getPrevAngle() {
+      return prevAngle;
+   }
+
+   public void setAnimationScale(float scaleX, float scaleY) {
+      animationScaleX = scaleX;
+      animationScaleY = scaleY;
+   }
+
+   public float getAnimationScaleX() {
+      return animationScaleX;
+   }
+
+   public float getAnimationScaleY() {
+      return animationScaleY;
+   }
+
+   /**
+    * Places the sprite between the previous and the current body transform,
+    * and applies the animation scale.
+    *
+    * @param alpha 0 for the previous state, 1 for the current one.
+    */
+   public void interpolate(Body body, float alpha) {
+      float x = body.getPosition().x;
+      float y = body.getPosition().y;
+      float angle = body.getAngle();
+
+      x = prevX + (x - prevX) * alpha;
+      y = prevY + (y - prevY) * alpha;
+      angle = prevAngle + (angle - prevAngle) * alpha;
+
+      setPosition(x - getOriginX(), y - getOriginY());
+      // We need to convert our angle from radians to degrees
+      setRotation(MathUtils.radiansToDegrees * angle);
+      setScale(animationScaleX, animationScaleY);
+   }
+
+   /**
+    * Like {@link #interpolate(Body, float)}, but adds the result to a
+    * {@link QuadBatch} instead of moving the sprite. The sprite supplies only
+    * its size and origin, its texture region must be the batch's.
+    */
+   public void interpolate(Body body, float alpha, QuadBatch quads) {
+      float x = prevX + (body.getPosition().x - prevX) * alpha;
+      float y = prevY + (body.getPosition().y - prevY) * alpha;
+      float angle = prevAngle + (body.getAngle() - prevAngle) * alpha;
+      quads.add(x, y, getOriginX(), getOriginY(), getWidth(), getHeight(),
+               animationScaleX, animationScaleY, MathUtils.radiansToDegrees * angle);
+   }
+}
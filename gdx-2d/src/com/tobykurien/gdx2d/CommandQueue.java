@@ -0,0 +1,83 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.physics.box2d.Body;
+
+/**
+ * Lock-free queue of requests from the render thread to the thread that
+ * owns the world. One producer and one consumer only; the two indices are
+ * volatile and each is written by one side, so no locks or allocation are
+ * needed.
+ */
+public class CommandQueue {
+   public static final int SPAWN_BALL = 1;
+   public static final int FREE_BALL = 2;
+
+   /** Carries out commands on the consumer thread. */
+   public interface Handler {
+      void spawnBall();
+
+      void freeBall(Body body);
+   }
+
+   private final int[] types;
+   private final Body[] targets;
+   private final int mask;
+
+   private volatile int head; // next to read, written by the consumer
+   private volatile int tail; // next to write, written by the producer
+
+   /**
+    * @param capacity Rounded up to a power of two.
+    */
+   public CommandQueue(int capacity) {
+      int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+      types = new int[size];
+      targets = new Body[size];
+      mask = size - 1;
+   }
+
+   /** @return false if the queue is full and the request was dropped. */
+   public boolean spawnBall() {
+      return offer(SPAWN_BALL, null);
+   }
+
+   /** @return false if the queue is full and the request was dropped. */
+   public boolean freeBall(Body body) {
+      return offer(FREE_BALL, body);
+   }
+
+   /**
+    * Runs all queued commands on the calling (consumer) thread.
+    *
+    * @return The number of commands run.
+    */
+   public int drain(Handler handler) {
+      int h = head;
+      int t = tail;
+      int n = t - h;
+      for (; h != t; h++) {
+         int i = h & mask;
+         switch (types[i]) {
+         case SPAWN_BALL:
+            handler.spawnBall();
+            break;
+         case FREE_BALL:
+            handler.freeBall(targets[i]);
+            targets[i] = null;
+            break;
+         }
+      }
+      head = h;
+      return n;
+   }
+
+   private boolean offer(int type, Body target) {
+      int t = tail;
+      if (t - head > mask) return false;
+      int i = t & mask;
+      types[i] = type;
+      targets[i] = target;
+      tail = t + 1; // publishes the slot
+      return true;
+   }
+}
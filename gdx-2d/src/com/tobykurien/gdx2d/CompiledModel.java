@@ -0,0 +1,230 @@
+package com.tobykurien.gdx2d;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.tobykurien.gdx2d.BodyEditorLoader.CircleModel;
+import com.tobykurien.gdx2d.BodyEditorLoader.Model;
+import com.tobykurien.gdx2d.BodyEditorLoader.PolygonModel;
+import com.tobykurien.gdx2d.BodyEditorLoader.RigidBodyModel;
+
+/**
+ * Compact binary form of a {@link BodyEditorLoader} model, so large editor
+ * projects don't have to be parsed as JSON at startup. All numbers are big
+ * endian:
+ *
+ * <pre>
+ * int    magic 'BEM1'
+ * int    body count
+ * body:  string name, string imagePath, float originX, float originY,
+ *        int polygon count, int[] vertex count per polygon,
+ *        float[] x,y of all polygon vertices,
+ *        int circle count, float[] cx,cy,r of all circles
+ * string: short byte length (-1 for null), UTF-8 bytes
+ * </pre>
+ *
+ * Write it with {@link #write(Model, OutputStream)} (see ModelCompiler in
+ * gdx-2d-headless) and load it by passing a file ending in
+ * {@link #EXTENSION} to {@link BodyEditorLoader}.
+ */
+public final class CompiledModel {
+   public static final String EXTENSION = "bem";
+   static final int MAGIC = 0x42454D31; // BEM1
+
+   /** Provides the bytes of a compiled model file. */
+   public interface BufferSource {
+      ByteBuffer open(FileHandle file);
+   }
+
+   /** Copies the file into a direct buffer. Works on every backend. */
+   public static final BufferSource DIRECT = new BufferSource() {
+      @Override
+      public ByteBuffer open(FileHandle file) {
+         byte[] bytes = file.readBytes();
+         ByteBuffer buffer = BufferUtils.newByteBuffer(bytes.length);
+         buffer.put(bytes);
+         buffer.flip();
+         return buffer;
+      }
+   };
+
+   private static BufferSource bufferSource = DIRECT;
+
+   private CompiledModel() {
+   }
+
+   /**
+    * Sets how compiled files are opened, e.g. memory mapped where the
+    * backend allows it.
+    */
+   public static void setBufferSource(BufferSource source) {
+      if (source == null) throw new NullPointerException("source is null");
+      bufferSource = source;
+   }
+
+   public static boolean isCompiled(FileHandle file) {
+      return EXTENSION.equals(file.extension());
+   }
+
+   public static Model read(FileHandle file) {
+      return read(open(file));
+   }
+
+   /** Opens the file with the current buffer source. */
+   public static ByteBuffer open(FileHandle file) {
+      return bufferSource.open(file);
+   }
+
+   public static Model read(ByteBuffer buffer) {
+      Model m = new Model();
+      for (int i = 0, n = readHeader(buffer); i < n; i++) {
+         RigidBodyModel rbModel = readBody(buffer);
+         m.rigidBodies.put(rbModel.name, rbModel);
+      }
+      return m;
+   }
+
+   /**
+    * Records where each body starts without building any of them. Only the
+    * names are decoded, the shapes are skipped over.
+    */
+   public static void index(ByteBuffer buffer, Map<String, int[]> index) {
+      for (int i = 0, n = readHeader(buffer); i < n; i++) {
+         int start = buffer.position();
+         String name = readString(buffer);
+         skipString(buffer); // imagePath
+         buffer.position(buffer.position() + 8); // origin
+
+         int polygonCount = buffer.getInt();
+         int floatCount = 0;
+         for (int ii = 0; ii < polygonCount; ii++) {
+            floatCount += buffer.getInt() * 2;
+         }
+         buffer.position(buffer.position() + floatCount * 4);
+         int circleCount = buffer.getInt();
+         buffer.position(buffer.position() + circleCount * 3 * 4);
+
+         index.put(name, new int[] { start, buffer.position() - start });
+      }
+   }
+
+   /** Builds the body starting at the given offset, see {@link #index}. */
+   public static RigidBodyModel readBody(ByteBuffer buffer, int offset) {
+      buffer.position(offset);
+      return readBody(buffer);
+   }
+
+   private static int readHeader(ByteBuffer buffer) {
+      buffer.order(ByteOrder.BIG_ENDIAN);
+      if (buffer.getInt() != MAGIC) throw new GdxRuntimeException("Not a compiled body editor model");
+      return buffer.getInt();
+   }
+
+   private static RigidBodyModel readBody(ByteBuffer buffer) {
+      RigidBodyModel rbModel = new RigidBodyModel();
+      rbModel.name = readString(buffer);
+      rbModel.imagePath = readString(buffer);
+      rbModel.origin.x = buffer.getFloat();
+      rbModel.origin.y = buffer.getFloat();
+
+      // polygons, counts first and then one block of coordinates
+      int polygonCount = buffer.getInt();
+      int[] vertexCounts = new int[polygonCount];
+      int floatCount = 0;
+      for (int i = 0; i < polygonCount; i++) {
+         vertexCounts[i] = buffer.getInt();
+         floatCount += vertexCounts[i] * 2;
+      }
+      float[] coords = readFloats(buffer, floatCount);
+      for (int i = 0, c = 0; i < polygonCount; i++) {
+         PolygonModel polygon = new PolygonModel();
+         polygon.vertices = new float[vertexCounts[i] * 2];
+         System.arraycopy(coords, c, polygon.vertices, 0, polygon.vertices.length);
+         c += polygon.vertices.length;
+         rbModel.polygons.add(polygon);
+      }
+
+      // circles
+      int circleCount = buffer.getInt();
+      float[] circles = readFloats(buffer, circleCount * 3);
+      for (int i = 0, c = 0; i < circleCount; i++, c += 3) {
+         CircleModel circle = new CircleModel();
+         circle.center.set(circles[c], circles[c + 1]);
+         circle.radius = circles[c + 2];
+         rbModel.circles.add(circle);
+      }
+      return rbModel;
+   }
+
+   public static void write(Model model, OutputStream output) throws IOException {
+      DataOutputStream out = new DataOutputStream(output);
+      out.writeInt(MAGIC);
+      out.writeInt(model.rigidBodies.size());
+      for (RigidBodyModel rbModel : model.rigidBodies.values()) {
+         writeString(out, rbModel.name);
+         writeString(out, rbModel.imagePath);
+         out.writeFloat(rbModel.origin.x);
+         out.writeFloat(rbModel.origin.y);
+
+         out.writeInt(rbModel.polygons.size());
+         for (PolygonModel polygon : rbModel.polygons) {
+            out.writeInt(polygon.vertices.length / 2);
+         }
+         for (PolygonModel polygon : rbModel.polygons) {
+            for (float f : polygon.vertices) {
+               out.writeFloat(f);
+            }
+         }
+
+         out.writeInt(rbModel.circles.size());
+         for (CircleModel circle : rbModel.circles) {
+            out.writeFloat(circle.center.x);
+            out.writeFloat(circle.center.y);
+            out.writeFloat(circle.radius);
+         }
+      }
+      out.flush();
+   }
+
+   private static float[] readFloats(ByteBuffer buffer, int count) {
+      float[] floats = new float[count];
+      buffer.asFloatBuffer().get(floats);
+      buffer.position(buffer.position() + count * 4);
+      return floats;
+   }
+
+   private static String readString(ByteBuffer buffer) {
+      int length = buffer.getShort();
+      if (length < 0) return null;
+      byte[] bytes = new byte[length];
+      buffer.get(bytes);
+      try {
+         return new String(bytes, "UTF-8");
+      } catch (UnsupportedEncodingException e) {
+         throw new GdxRuntimeException(e);
+      }
+   }
+
+   private static void skipString(ByteBuffer buffer) {
+      int length = buffer.getShort();
+      if (length > 0) buffer.position(buffer.position() + length);
+   }
+
+   private static void writeString(DataOutputStream out, String s) throws IOException {
+      if (s == null) {
+         out.writeShort(-1);
+         return;
+      }
+      byte[] bytes = s.getBytes("UTF-8");
+      out.writeShort(bytes.length);
+      out.write(bytes);
+   }
+}
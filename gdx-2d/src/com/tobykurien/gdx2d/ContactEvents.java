@@ -0,0 +1,146 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.physics.box2d.Contact;
+import com.badlogic.gdx.physics.box2d.ContactImpulse;
+import com.badlogic.gdx.physics.box2d.ContactListener;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.Manifold;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * The world's contact listener. During the step it only appends begin and
+ * end events to a ring buffer; {@link #process()} hands them to the
+ * handlers afterwards, in order, when the world may be changed again. Game
+ * logic stays out of the Box2D callbacks, and nothing is allocated unless
+ * a step has more events than ever before, when the buffer grows.
+ * <br/><br/>
+ *
+ * Events whose fixture is already gone are dropped: libgdx forgets a body's
+ * fixtures before Box2D reports the end of their contacts.
+ */
+public class ContactEvents implements ContactListener {
+   static final int DEFAULT_CAPACITY = 1024;
+
+   /** Receives the events of a step, after it. */
+   public interface Handler {
+      void beginContact(Fixture a, Fixture b);
+
+      void endContact(Fixture a, Fixture b);
+   }
+
+   // Events, head is the oldest
+   private Fixture[] fixtureA, fixtureB;
+   private boolean[] begin;
+   private int head, size;
+
+   private final Array<Handler> handlers = new Array<Handler>(false, 4, Handler.class);
+   private int processed;
+
+   public ContactEvents() {
+      this(DEFAULT_CAPACITY);
+   }
+
+   /** @param capacity Events buffered before the buffer has to grow. */
+   public ContactEvents(int capacity) {
+      if (capacity < 1) throw new IllegalArgumentException("capacity < 1");
+      fixtureA = new Fixture[capacity];
+      fixtureB = new Fixture[capacity];
+      begin = new boolean[capacity];
+   }
+
+   public void addHandler(Handler handler) {
+      handlers.add(handler);
+   }
+
+   public void removeHandler(Handler handler) {
+      handlers.removeValue(handler, true);
+   }
+
+   /**
+    * Hands all buffered events to the handlers, oldest first, and empties
+    * the buffer. Call after the world was stepped, not during the step.
+    */
+   public void process() {
+      Handler[] items = handlers.items;
+      int n = handlers.size;
+      int capacity = begin.length;
+      processed = size;
+      while (size > 0) {
+         Fixture a = fixtureA[head], b = fixtureB[head];
+         boolean began = begin[head];
+         // don't keep the fixtures alive
+         fixtureA[head] = null;
+         fixtureB[head] = null;
+         head = (head + 1) % capacity;
+         size--;
+         for (int i = 0; i < n; i++) {
+            if (began) {
+               items[i].beginContact(a, b);
+            } else {
+               items[i].endContact(a, b);
+            }
+         }
+      }
+      head = 0;
+   }
+
+   /** Number of events handed out by the last {@link #process()}. */
+   public int getProcessed() {
+      return processed;
+   }
+
+   /** Number of events waiting for {@link #process()}. */
+   public int getPending() {
+      return size;
+   }
+
+   public int getCapacity() {
+      return begin.length;
+   }
+
+   private void add(Fixture a, Fixture b, boolean began) {
+      if (a == null || b == null) return;
+      if (size == begin.length) grow();
+      int i = (head + size) % begin.length;
+      fixtureA[i] = a;
+      fixtureB[i] = b;
+      begin[i] = began;
+      size++;
+   }
+
+   /** Doubles the buffer, unrolling it so the oldest event is first. */
+   private void grow() {
+      int capacity = begin.length;
+      Fixture[] newA = new Fixture[capacity * 2];
+      Fixture[] newB = new Fixture[capacity * 2];
+      boolean[] newBegin = new boolean[capacity * 2];
+      for (int k = 0; k < size; k++) {
+         int i = (head + k) % capacity;
+         newA[k] = fixtureA[i];
+         newB[k] = fixtureB[i];
+         newBegin[k] = begin[i];
+      }
+      fixtureA = newA;
+      fixtureB = newB;
+      begin = newBegin;
+      head = 0;
+   }
+
+   @Override
+   public void beginContact(Contact contact) {
+      add(contact.getFixtureA(), contact.getFixtureB(), true);
+   }
+
+   @Override
+   public void endContact(Contact contact) {
+      add(contact.getFixtureA(), contact.getFixtureB(), false);
+   }
+
+   @Override
+   public void preSolve(Contact contact, Manifold oldManifold) {
+   }
+
+   @Override
+   public void postSolve(Contact contact, ContactImpulse impulse) {
+   }
+}
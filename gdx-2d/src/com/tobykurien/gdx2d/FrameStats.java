@@ -0,0 +1,55 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+
+/**
+ * Counts what one frame cost the GPU: draw calls and texture switches.
+ * {@link SpriteBatch} doesn't report texture switches, so the renderer
+ * tells us each texture it is about to draw with.
+ */
+public class FrameStats {
+   private int drawCalls;
+   private int textureSwitches;
+   private Texture lastTexture;
+
+   // running counts for the frame in progress
+   private int switches;
+   private int otherCalls;
+
+   /** Call when the frame's drawing begins. */
+   public void begin() {
+      lastTexture = null;
+      switches = 0;
+      otherCalls = 0;
+   }
+
+   /** Counts draw calls made outside the batch, e.g. by a SpriteCache. */
+   public void addDrawCalls(int calls) {
+      otherCalls += calls;
+   }
+
+   /** Call before drawing with the given texture. */
+   public void texture(Texture texture) {
+      if (texture != lastTexture) {
+         if (lastTexture != null) switches++;
+         lastTexture = texture;
+      }
+   }
+
+   /** Call after the batch ended, the frame's numbers become visible. */
+   public void end(SpriteBatch batch) {
+      drawCalls = batch.renderCalls + otherCalls;
+      textureSwitches = switches;
+   }
+
+   /** Draw calls issued during the last frame. */
+   public int getDrawCalls() {
+      return drawCalls;
+   }
+
+   /** Times the batch had to change texture during the last frame. */
+   public int getTextureSwitches() {
+      return textureSwitches;
+   }
+}
@@ -0,0 +1,29 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.TimeUtils;
+
+/**
+ * Where {@link Gdx2d} gets the time from, so tests and replays can run on
+ * their own time instead of the wall clock.
+ */
+public interface GameClock {
+   /** The backend's clock: wall time and the graphics frame time. */
+   GameClock SYSTEM = new GameClock() {
+      @Override
+      public long millis() {
+         return TimeUtils.millis();
+      }
+
+      @Override
+      public float getDeltaTime() {
+         return Gdx.graphics.getDeltaTime();
+      }
+   };
+
+   /** The current time in milliseconds, from any fixed point. */
+   long millis();
+
+   /** The time since the last frame, in seconds. */
+   float getDeltaTime();
+}
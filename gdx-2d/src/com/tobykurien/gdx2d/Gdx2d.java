@@ -1,96 +1,169 @@
 package com.tobykurien.gdx2d;
 
-import java.lang.ref.WeakReference;
-
-import aurelienribon.tweenengine.Tween;
-import aurelienribon.tweenengine.TweenAccessor;
-import aurelienribon.tweenengine.TweenManager;
-import aurelienribon.tweenengine.equations.Bounce;
-import aurelienribon.tweenengine.equations.Sine;
-
 import com.badlogic.gdx.ApplicationListener;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.assets.loaders.resolvers.InternalFileHandleResolver;
+import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL10;
 import com.badlogic.gdx.graphics.OrthographicCamera;
-import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.graphics.Texture.TextureFilter;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.BitmapFontCache;
-import com.badlogic.gdx.graphics.g2d.Sprite;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
-import com.badlogic.gdx.math.MathUtils;
-import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
-import com.badlogic.gdx.physics.box2d.BodyDef;
-import com.badlogic.gdx.physics.box2d.BodyDef.BodyType;
 import com.badlogic.gdx.physics.box2d.Box2DDebugRenderer;
-import com.badlogic.gdx.physics.box2d.CircleShape;
-import com.badlogic.gdx.physics.box2d.FixtureDef;
-import com.badlogic.gdx.physics.box2d.World;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.TimeUtils;
 
 public class Gdx2d implements ApplicationListener {
+   private final ThreadedPhysics physics;
+   private final GameClock clock;
+   private final InputSource input;
+   private SpawnRecorder recorder;
+   
    private OrthographicCamera camera;
    private OrthographicCamera uiCamera;
    private SpriteBatch batch;
+   private AssetManager assets;
+   private String modelFile;
+   private TextureRegion progressRegion;
 
-   private World world;
+   private Simulation sim;
+   private VisibleBodies visible;
+   private StaticLayer statics;
    private Box2DDebugRenderer debugRenderer;
    
-   private WeakReference<Body> bottle;
    private long lastBallTime;
    private BitmapFont font;
    private BitmapFontCache scoreText;
-   private TweenManager tm;
+   private final StringBuilder scoreString = new StringBuilder();
+   private int shownScore;
+   private ProceduralTextures textures;
+   private TextureRegion ballRegion;
+   private QuadBatch ballQuads;
+   private final FrameStats stats = new FrameStats();
+   private final Metrics metrics = new Metrics();
+   private MetricsHud hud;
+   private boolean hudVisible;
+   private boolean settling;
+   private ParticleSystem particles;
+   private QualityGovernor governor = new QualityGovernor();
    
    static final float WORLD_TO_BOX = 0.1f;
    static final float BOX_TO_WORLD = 10f;
    static final float CAMERA_SCALE = 3f;
    static final float UI_SCALE = 3f;
+   static final float CULL_MARGIN = 0.3f; // largest tweened ball sprite
+   static final int BATCH_SIZE = 5460; // most sprites a SpriteBatch can index
+   static final int STATIC_SPRITES = 16;
+   static final int LOAD_MILLIS = 8; // GL thread time per frame for loading
+   static final long SPAWN_MILLIS = 100; // between spawns without a governor
+   static final String FONT = "data/monaco.fnt";
+   static final String SNAPSHOT = "gdx2d." + WorldSnapshot.EXTENSION; // local, saved on pause
+   /** Images, font page and ball, see {@link #findRegion(String)}. */
+   public static final String ATLAS = "data/packed.atlas";
+   public static final String FONT_REGION = "monaco";
+   public static final String BALL_REGION = "ball";
+   public static final int BALL_PIXELS = 16;
+
+   public Gdx2d() {
+      this(null);
+   }
+
+   /**
+    * @param physics Steps the world on another thread, or null to step it on
+    *        the render thread.
+    */
+   public Gdx2d(ThreadedPhysics physics) {
+      this(physics, GameClock.SYSTEM, InputSource.GDX);
+   }
 
+   /**
+    * @param clock The time the game runs on.
+    * @param input The input that spawns balls.
+    */
+   public Gdx2d(ThreadedPhysics physics, GameClock clock, InputSource input) {
+      if (clock == null) throw new NullPointerException("clock is null");
+      if (input == null) throw new NullPointerException("input is null");
+      this.physics = physics;
+      this.clock = clock;
+      this.input = input;
+   }
+
+   /**
+    * Sets up what the loading screen needs and queues everything else on an
+    * {@link AssetManager}: files are read, images decoded and the model
+    * parsed on its loading thread, and textures are uploaded a few at a
+    * time in {@link #render()}. The scene is built once all of it is in.
+    */
    @Override
    public void create() {
       float w = Gdx.graphics.getWidth();
       float h = Gdx.graphics.getHeight();
 
       camera = new OrthographicCamera(CAMERA_SCALE, h / w * CAMERA_SCALE);
+      uiCamera = new OrthographicCamera(512*UI_SCALE, h / w * 512*UI_SCALE);
+      uiCamera.combined.setTranslation(-1, 1, 0);
       
-      batch = new SpriteBatch();
+      batch = new SpriteBatch(BATCH_SIZE);
+
+      textures = new ProceduralTextures();
+      progressRegion = new TextureRegion(textures.get(4, Color.WHITE, ProceduralTextures.Shape.SQUARE));
+      ballQuads = new QuadBatch(Simulation.BALL_POOL_SIZE);
+
+      assets = new AssetManager();
+      assets.setLoader(BodyEditorLoader.class, new BodyEditorAssetLoader(new InternalFileHandleResolver()));
+      assets.setLoader(BitmapFont.class, new AtlasFontLoader(new InternalFileHandleResolver()));
+      // textures lost with the GL context are reloaded through the manager
+      Texture.setAssetManager(assets);
+
+      // Sprites, balls and text all come from one atlas texture, so a frame
+      // draws without switching textures (packed by AtlasPacker)
+      assets.load(ATLAS, TextureAtlas.class);
+      assets.load(FONT, BitmapFont.class, new AtlasFontLoader.Parameters(ATLAS, FONT_REGION));
+
+      // The file saved from the editor, preferring its compiled form
+      modelFile = "data/test." + CompiledModel.EXTENSION;
+      if (!Gdx.files.internal(modelFile).exists()) modelFile = "data/test.json";
+      assets.load(modelFile, BodyEditorLoader.class);
+   }
 
-      world = new World(new Vector2(0, -10), true);
+   /** Builds the scene from the loaded assets. */
+   private void createScene() {
+      BodyEditorLoader loader = assets.get(modelFile, BodyEditorLoader.class);
+      ballRegion = findRegion(BALL_REGION);
+      sim = new Simulation(loader, findRegion(stripExtension(loader.getImagePath("test01"))), ballRegion);
+      visible = new VisibleBodies();
+      statics = new StaticLayer(STATIC_SPRITES);
       debugRenderer = new Box2DDebugRenderer();
-      createBottle();
+      sim.setSettling(settling);
+      sim.setParticles(particles);
+      if (restoreSnapshot() && recorder != null) {
+         // a replay starts from an empty world, it can't start from this one
+         Gdx.app.error("gdx-2d", "Resumed from a snapshot, spawns are not recorded");
+         recorder.dispose();
+         recorder = null;
+      }
+      if (recorder != null && governor != null) {
+         // a replay steps at the recorded rate with the default iterations
+         Gdx.app.log("gdx-2d", "Recording spawns, the quality governor is off");
+         governor = null;
+      }
+      sim.setRecorder(recorder);
+      sim.setGovernor(governor);
+      if (physics != null) physics.start(sim);
       
       // font and UI
-      uiCamera = new OrthographicCamera(512*UI_SCALE, h / w * 512*UI_SCALE);
-      uiCamera.combined.setTranslation(-1, 1, 0);
-      font = new BitmapFont(Gdx.files.internal("data/monaco.fnt"), 
-               Gdx.files.internal("data/monaco.png"), false);
+      font = assets.get(FONT, BitmapFont.class);
       scoreText = new BitmapFontCache(font);
-      scoreText.addText("Score", 0, 0);
-      
-      // animations
-      tm = new TweenManager();
-      Tween.setCombinedAttributesLimit(4); // rgba
-      Tween.registerAccessor(Body.class, new TweenAccessor<Body>() {
-         @Override
-         public int getValues(Body target, int tweenType, float[] returnValues) {
-             Sprite s = (Sprite) target.getUserData();
-             returnValues[0] = s.getScaleX();
-             returnValues[1] = s.getScaleY();
-             return 2;
-         }
-         
-         @Override
-         public void setValues(Body target, int tweenType, float[] newValues) {
-            Sprite s = (Sprite) target.getUserData();
-            s.setScale(newValues[0], newValues[1]);
-         }
-      });      
+      shownScore = 0;
+      scoreText.setText(scoreString.append("Score ").append(shownScore), 0, 0);
+      hud = new MetricsHud(metrics, font);
    }
 
    @Override
@@ -98,173 +171,378 @@ public class Gdx2d implements ApplicationListener {
       Gdx.gl.glClearColor(0.3f, 0.3f, 0.3f, 1);
       Gdx.gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
 
-      if (Gdx.input.isButtonPressed(Input.Buttons.LEFT) && 
-               (System.currentTimeMillis() - lastBallTime > 100)) {
-         lastBallTime = System.currentTimeMillis();
+      // also picks up textures reloaded after the GL context was lost
+      if (!assets.update(LOAD_MILLIS)) {
+         drawProgress(assets.getProgress());
+         return;
+      }
+      if (sim == null) createScene();
+
+      long spawnMillis = governor != null ? governor.getSettings().spawnMillis : SPAWN_MILLIS;
+      if (input.isButtonPressed(Input.Buttons.LEFT) && 
+               (clock.millis() - lastBallTime > spawnMillis)) {
+         lastBallTime = clock.millis();
          createBall();
-         Gdx.app.log("world", "Bodies = " + world.getBodyCount());
       }
-      
-      world.step(1 / 60f, 6, 2);
-      tm.update(Gdx.graphics.getDeltaTime());
 
-      Array<Body> bi = new Array<Body>();
-      world.getBodies(bi);
+      if (physics == null) sim.update(clock.getDeltaTime());
 
+      long renderStart = TimeUtils.nanoTime();
+      stats.begin();
+      TransformSnapshot snapshot = physics != null ? physics.latest() : null;
+      drawStatics(snapshot);
       batch.setProjectionMatrix(camera.combined);
       batch.enableBlending();
       batch.begin();
 
-      renderBody(bottle.get(), (Sprite)bottle.get().getUserData());
-      for (Body b : bi) {
-         Sprite e = (Sprite) b.getUserData();
-         if (b != bottle.get() && e != null) {
-            renderBody(b, e);
-         }
+      if (snapshot != null) {
+         drawSnapshot(snapshot);
+         updateScore(snapshot.score);
+      } else {
+         drawWorld();
+         updateScore(sim.getScore());
       }
 
       batch.setProjectionMatrix(uiCamera.combined);
+      stats.texture(font.getRegion().getTexture());
       font.draw(batch, "Hello world", 100, -100);
       scoreText.draw(batch);
+      if (hudVisible) hud.draw(batch, 100, -160);
       batch.end();
+      stats.end(batch);
+
+      recordMetrics(snapshot, TimeUtils.nanoTime() - renderStart);
       
-      //debugRenderer.render(world, camera.combined);
+      //debugRenderer.render(sim.getWorld(), camera.combined);
    }
 
-   private void renderBody(Body b, Sprite e) {
-      // Update the entities/sprites position and angle
-      Vector2 origin = new Vector2(e.getOriginX(), e.getOriginY());
-      Vector2 pos = b.getPosition().sub(origin);
-      
-      if (pos.y < -CAMERA_SCALE) {
-         // out of view
-         world.destroyBody(b);
-         Gdx.app.log("world", "Bodies = " + world.getBodyCount());
-      } else {
-         e.setPosition(pos.x, pos.y);
-         // We need to convert our angle from radians to degrees
-         e.setRotation(MathUtils.radiansToDegrees * b.getAngle());
-         e.draw(batch);
+   /**
+    * Picks up where the last run was paused, e.g. before Android killed the
+    * process in the background. The snapshot is used once, and one that
+    * can't be read is dropped so it doesn't fail every later start too.
+    *
+    * @return true if the world was restored.
+    */
+   private boolean restoreSnapshot() {
+      FileHandle file = snapshotFile();
+      if (file == null || !file.exists()) return false;
+      try {
+         WorldSnapshot.restore(sim, file);
+         return true;
+      } catch (RuntimeException e) {
+         Gdx.app.error("gdx-2d", "Could not restore " + file.path(), e);
+         return false;
+      } finally {
+         file.delete();
       }
    }
 
+   /** Where the world is saved on pause, null if there is no local storage. */
+   private FileHandle snapshotFile() {
+      return Gdx.files.isLocalStorageAvailable() ? Gdx.files.local(SNAPSHOT) : null;
+   }
+
+   /**
+    * The atlas region of an image. Regions are named by their path below
+    * data/ without the extension, e.g. "gfx/test01" for the image path
+    * "gfx/test01.png" of a {@link BodyEditorLoader} body.
+    */
+   public TextureRegion findRegion(String name) {
+      TextureRegion region = assets.get(ATLAS, TextureAtlas.class).findRegion(name);
+      if (region == null) throw new IllegalArgumentException("No region " + name + " in " + ATLAS);
+      return region;
+   }
+
+   static String stripExtension(String path) {
+      int dot = path.lastIndexOf('.');
+      return dot > path.lastIndexOf('/') ? path.substring(0, dot) : path;
+   }
+
+   /** Balls share the atlas with everything else, so match the region too. */
+   private boolean isBall(BodySprite sprite) {
+      return sprite.getTexture() == ballRegion.getTexture() && sprite.getU() == ballRegion.getU()
+               && sprite.getV() == ballRegion.getV();
+   }
+
+   /** A bar across the middle of the screen, filled by progress (0 to 1). */
+   private void drawProgress(float progress) {
+      float width = uiCamera.viewportWidth - 200;
+      float y = -uiCamera.viewportHeight / 2;
+      batch.setProjectionMatrix(uiCamera.combined);
+      batch.begin();
+      batch.setColor(0.2f, 0.2f, 0.2f, 1);
+      batch.draw(progressRegion, 100, y, width, 20);
+      batch.setColor(Color.WHITE);
+      batch.draw(progressRegion, 100, y, width * progress, 20);
+      batch.end();
+   }
+
+   /** Lays the score text out again, only if the score changed. */
+   private void updateScore(int score) {
+      if (score == shownScore) return;
+      shownScore = score;
+      scoreString.setLength(0);
+      scoreText.setText(scoreString.append("Score ").append(score), 0, 0);
+   }
+
+   /**
+    * Draws the static bodies from the {@link StaticLayer}, placing their
+    * sprites again only when the simulation says they moved. With a
+    * physics thread they are placed from the snapshot.
+    */
+   private void drawStatics(TransformSnapshot snapshot) {
+      int version = snapshot != null ? snapshot.staticVersion : sim.getStaticVersion();
+      if (statics.isStale(version)) {
+         statics.begin();
+         if (snapshot != null) {
+            for (int i = 0; i < snapshot.staticCount; i++) statics.add(snapshot.apply(i, 1));
+         } else {
+            Array<Body> bodies = sim.getStaticBodies();
+            for (int i = 0; i < bodies.size; i++) {
+               BodySprite sprite = (BodySprite) bodies.get(i).getUserData();
+               sprite.interpolate(bodies.get(i), 1);
+               statics.add(sprite);
+            }
+         }
+         statics.end(version);
+      }
+      if (statics.draw(camera.combined)) {
+         stats.texture(statics.getTexture());
+         stats.addDrawCalls(1);
+      }
+   }
+
+   private void drawWorld() {
+      float alpha = sim.getAlpha();
+
+      // only what the camera sees, grouped by texture and without the
+      // static layer; balls go into one vertex array
+      Array<Body> bi = visible.query(sim.getWorld(), camera, CULL_MARGIN);
+      ballQuads.begin(ballRegion);
+      for (int i = 0, n = bi.size; i < n; i++) {
+         Body b = bi.get(i);
+         BodySprite e = (BodySprite) b.getUserData();
+         if (isBall(e)) {
+            e.interpolate(b, alpha, ballQuads);
+         } else {
+            e.interpolate(b, alpha);
+            draw(e);
+         }
+      }
+
+      ParticleSystem particles = sim.getParticles();
+      if (particles != null) {
+         addParticles(particles.getCount(), particles.getRadius(), particles.getPrevX(), particles.getPrevY(),
+                  particles.getX(), particles.getY(), alpha);
+      }
+      drawBalls();
+   }
+
+   private void drawSnapshot(TransformSnapshot snapshot) {
+      float alpha = snapshot.alpha(TimeUtils.nanoTime());
+
+      // the world belongs to the physics thread, so cull on the snapshot
+      float halfWidth = camera.viewportWidth * camera.zoom / 2 + CULL_MARGIN;
+      float halfHeight = camera.viewportHeight * camera.zoom / 2 + CULL_MARGIN;
+      float left = camera.position.x - halfWidth, right = camera.position.x + halfWidth;
+      float bottom = camera.position.y - halfHeight, top = camera.position.y + halfHeight;
+
+      // the static entries are in the static layer
+      ballQuads.begin(ballRegion);
+      for (int i = snapshot.staticCount, n = snapshot.count; i < n; i++) {
+         float x = snapshot.x[i];
+         float y = snapshot.y[i];
+         if (x > left && x < right && y > bottom && y < top) {
+            if (isBall(snapshot.sprites[i])) {
+               snapshot.apply(i, alpha, ballQuads);
+            } else {
+               draw(snapshot.apply(i, alpha));
+            }
+         }
+      }
+      addParticles(snapshot.particleCount, snapshot.particleRadius, snapshot.particlePrevX,
+               snapshot.particlePrevY, snapshot.particleX, snapshot.particleY, alpha);
+      drawBalls();
+   }
+
+   /** Adds the particle balls the camera sees to the ball quads. */
+   private void addParticles(int count, float radius, float[] prevX, float[] prevY, float[] x, float[] y,
+            float alpha) {
+      float halfWidth = camera.viewportWidth * camera.zoom / 2 + radius;
+      float halfHeight = camera.viewportHeight * camera.zoom / 2 + radius;
+      float left = camera.position.x - halfWidth, right = camera.position.x + halfWidth;
+      float bottom = camera.position.y - halfHeight, top = camera.position.y + halfHeight;
+      for (int i = 0; i < count; i++) {
+         float px = prevX[i] + (x[i] - prevX[i]) * alpha;
+         float py = prevY[i] + (y[i] - prevY[i]) * alpha;
+         if (px > left && px < right && py > bottom && py < top) {
+            ballQuads.add(px, py, radius, radius, radius * 2, radius * 2, 1, 1, 0);
+         }
+      }
+   }
+
+   private void draw(BodySprite sprite) {
+      stats.texture(sprite.getTexture());
+      sprite.draw(batch);
+   }
+
+   private void drawBalls() {
+      if (ballQuads.size() == 0) return;
+      stats.texture(ballRegion.getTexture());
+      ballQuads.draw(batch);
+   }
+
+   /**
+    * @param snapshot The physics thread's latest state, which carries the
+    *        simulation's metrics, or null without a physics thread.
+    */
+   private void recordMetrics(TransformSnapshot snapshot, long renderNanos) {
+      float stepMillis = snapshot != null ? snapshot.stepMillis : sim.getStepMillis();
+      float animationMillis = snapshot != null ? snapshot.animationMillis : sim.getAnimationMillis();
+      float renderMillis = renderNanos / 1000000f;
+      metrics.set(Metrics.STEP_MS, stepMillis);
+      metrics.set(Metrics.ANIMATION_MS, animationMillis);
+      metrics.set(Metrics.RENDER_MS, renderMillis);
+      metrics.set(Metrics.BODIES, snapshot != null ? snapshot.bodyCount : sim.getBodyCount());
+      metrics.set(Metrics.FIXTURES, snapshot != null ? snapshot.fixtureCount : sim.getFixtureCount());
+      metrics.set(Metrics.CONTACTS, snapshot != null ? snapshot.contactCount : sim.getContactCount());
+      metrics.set(Metrics.DRAW_CALLS, stats.getDrawCalls());
+      metrics.set(Metrics.TEXTURE_SWITCHES, stats.getTextureSwitches());
+      metrics.setHeap(Gdx.app.getJavaHeap());
+      if (governor != null) {
+         // with a physics thread the two threads each have a frame's time
+         float physicsMillis = stepMillis + animationMillis;
+         governor.update(physics != null ? Math.max(physicsMillis, renderMillis) : physicsMillis + renderMillis);
+         metrics.set(Metrics.QUALITY, governor.getLevel());
+      }
+      metrics.endFrame();
+   }
+
    @Override
    public void resize(int width, int height) {
    }
 
+   /**
+    * Saves the world, in case the process is killed before {@link #resume()}.
+    * A physics thread is stopped first, both so that the world holds still
+    * while it is saved and so that it doesn't step in the background. The
+    * backends also pause before every {@link #dispose()}, which deletes the
+    * snapshot again: only a killed process leaves one behind.
+    */
    @Override
    public void pause() {
+      if (sim == null) return;
+      if (physics != null) physics.dispose();
+      FileHandle file = snapshotFile();
+      if (file != null) WorldSnapshot.save(sim, file);
    }
 
    @Override
    public void resume() {
+      if (sim == null) return;
+      // still running, the snapshot isn't needed
+      FileHandle file = snapshotFile();
+      if (file != null) file.delete();
+      if (physics != null) physics.start(sim);
    }
 
    @Override
    public void dispose() {
-      batch.dispose();
-      font.dispose();
+      // a normal exit, the next start begins with an empty world
+      FileHandle file = snapshotFile();
+      if (file != null) file.delete();
 
-      Array<Body> bi = new Array<Body>();
-      world.getBodies(bi);
-      for (Body b : bi) {
-         Sprite s = (Sprite) b.getUserData();
-         if (s != null) s.getTexture().dispose();
+      batch.dispose();
+      // the atlas and font, the parsed model stays cached
+      assets.dispose();
+      textures.dispose();
+
+      if (metrics.getWriter() != null) metrics.getWriter().dispose();
+      if (physics != null) physics.dispose();
+      if (sim != null) {
+         sim.dispose();
+         debugRenderer.dispose();
+         statics.dispose();
       }
+   }
 
-      world.dispose();
-      debugRenderer.dispose();
+   /** Draw calls and texture switches of the last frame. */
+   public FrameStats getFrameStats() {
+      return stats;
    }
 
+   public Metrics getMetrics() {
+      return metrics;
+   }
 
-   private void createBottle() {
-      float BOTTLE_WIDTH = 1;
+   /**
+    * Writes the metrics of every frame to the given writer, which is
+    * disposed with the game.
+    */
+   public void setMetricsWriter(MetricsWriter writer) {
+      metrics.setWriter(writer);
+   }
 
-      // Load the sprite
-      Texture texture = new Texture(Gdx.files.internal("data/gfx/test01.png"));
-      texture.setFilter(TextureFilter.Linear, TextureFilter.Linear);
-      TextureRegion region = new TextureRegion(texture, 0, 0, texture.getWidth(), texture.getHeight());
-      Sprite sprite = new Sprite(region);
+   /**
+    * Records the step of every spawn and the frames, for a replay with
+    * ReplayRunner. Set before {@link #create()}; the recorder is closed with
+    * the game, or right away, empty, if the game resumes from a saved world.
+    * Recording turns the quality governor off, as its level changes aren't
+    * recorded.
+    */
+   public void setSpawnRecorder(SpawnRecorder recorder) {
+      this.recorder = recorder;
+   }
 
-      // 0. Create a loader for the file saved from the editor.
-      BodyEditorLoader loader = new BodyEditorLoader(Gdx.files.internal("data/test.json"));
+   /**
+    * Bakes balls that came to rest into static bodies, see
+    * {@link BallSettler}. Set before {@link #create()}.
+    */
+   public void setSettling(boolean settling) {
+      this.settling = settling;
+   }
 
-      // 1. Create a BodyDef, as usual.
-      BodyDef bd = new BodyDef();
-      bd.position.set(0, -1);
-      bd.type = BodyType.StaticBody; // DynamicBody;
+   /**
+    * Spawns balls as particles of the given system instead of Box2D bodies,
+    * see {@link Simulation#setParticles(ParticleSystem)}. Set before
+    * {@link #create()}.
+    */
+   public void setParticles(ParticleSystem particles) {
+      this.particles = particles;
+   }
 
-      // 2. Create a FixtureDef, as usual.
-      FixtureDef fd = new FixtureDef();
-      fd.density = 1;
-      fd.friction = 0.5f;
-      fd.restitution = 0.3f;
+   /**
+    * Lowers physics quality and spawning when frames take too long and
+    * raises them again when there is time to spare, see
+    * {@link QualityGovernor}. On by default with a 16 ms budget, except
+    * while spawns are recorded; null turns it off. Set before
+    * {@link #create()}.
+    */
+   public void setGovernor(QualityGovernor governor) {
+      this.governor = governor;
+   }
 
-      // 3. Create a Body, as usual.
-      Body bottleModel = world.createBody(bd);
-      bottleModel.setUserData(sprite);
-      bottle = new WeakReference<Body>(bottleModel);
+   /** The governor, whose level is also in the metrics, or null. */
+   public QualityGovernor getGovernor() {
+      return governor;
+   }
 
-      // 4. Create the body fixture automatically by using the loader.
-      loader.attachFixture(bottleModel, "test01", fd, BOTTLE_WIDTH);
+   /** Shows the metrics on screen, under the score. */
+   public void setHudVisible(boolean visible) {
+      hudVisible = visible;
+   }
 
-      // Reference the origin of the model
-      Vector2 bottleModelOrigin = loader.getOrigin("test01", BOTTLE_WIDTH).cpy();
-      sprite.setSize(BOTTLE_WIDTH, BOTTLE_WIDTH * sprite.getHeight() / sprite.getWidth());
-      sprite.setOrigin(bottleModelOrigin.x, bottleModelOrigin.y);
+   public boolean isHudVisible() {
+      return hudVisible;
    }
 
    public void createBall() {
-      float BOTTLE_WIDTH = 0.03f;
-
-      // 1. Create a BodyDef, as usual.
-      BodyDef bd = new BodyDef();
-      bd.type = BodyType.DynamicBody;
-
-      // Create our body in the world using our body definition
-      Body body = world.createBody(bd);
-      
-      // Create a circle shape and set its radius to 6
-      CircleShape circle = new CircleShape();
-      circle.setRadius(BOTTLE_WIDTH);
-
-      // Create a fixture definition to apply our shape to
-      FixtureDef fixtureDef = new FixtureDef();
-      fixtureDef.shape = circle;
-      fixtureDef.density = 0.7f;
-      fixtureDef.friction = 0.4f;
-      fixtureDef.restitution = 0.3f;
-
-      // Create our fixture and attach it to the body
-      body.createFixture(fixtureDef);
-
-      // Remember to dispose of any shapes after you're done with them!
-      // BodyDef and FixtureDef don't need disposing, but shapes do.
-      circle.dispose();
-      
-      // create sprite for ball
-      Pixmap pm = new Pixmap(16, 16, Pixmap.Format.RGBA8888);
-      pm.setColor(1, 0, 0, 1);
-      pm.fillCircle(pm.getWidth()/2, pm.getWidth()/2, pm.getWidth()/2);
-      Sprite sprite = new Sprite(new Texture(pm));
-
-      // size the sprite to match the body def above
-      sprite.setSize(0.06f, 0.06f * sprite.getHeight() / sprite.getWidth());
-      
-      // origin of this sprite (it's center) needs to overlap the 
-      // center of the circle in the body def above
-      sprite.setOrigin(sprite.getHeight()/2, sprite.getHeight()/2);
-      body.setUserData(sprite);
-      pm.dispose();
-      
-      // place ball above bottle
-      body.setTransform(0, 1, 0);
-      
-      // tween example
-      Tween.to(body, 0, 0.1f)
-         .target(2, 5)
-         .ease(Sine.IN)
-         .repeatYoyo(3, 0)
-         .start(tm);
+      if (sim == null) {
+         return; // still loading
+      } else if (physics != null) {
+         physics.getCommands().spawnBall();
+      } else {
+         sim.spawnBall();
+      }
    }
 }
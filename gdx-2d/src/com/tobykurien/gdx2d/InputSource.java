@@ -0,0 +1,20 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.Gdx;
+
+/**
+ * The input {@link Gdx2d} reacts to, so it can be scripted instead of
+ * coming from the backend.
+ */
+public interface InputSource {
+   /** The backend's input. */
+   InputSource GDX = new InputSource() {
+      @Override
+      public boolean isButtonPressed(int button) {
+         return Gdx.input.isButtonPressed(button);
+      }
+   };
+
+   /** @see com.badlogic.gdx.Input#isButtonPressed(int) */
+   boolean isButtonPressed(int button);
+}
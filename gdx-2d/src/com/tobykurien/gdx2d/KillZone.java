@@ -0,0 +1,81 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.FixtureDef;
+import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * A wide sensor below the scene. Bodies touching it are queued from the
+ * step's {@link ContactEvents} and handed out afterwards. This replaces
+ * checking every body's position every frame.
+ */
+public class KillZone implements ContactEvents.Handler {
+   static final float HALF_WIDTH = 100;
+   static final float HALF_HEIGHT = 1;
+
+   private final Fixture sensor;
+   private final float top;
+   private final Array<Body> queued = new Array<Body>();
+
+   /**
+    * Creates the sensor with its top edge at the given height. Add it as a
+    * handler to the world's {@link ContactEvents} to fill the queue.
+    */
+   public KillZone(World world, float top) {
+      this.top = top;
+      BodyDef bd = new BodyDef();
+      bd.position.set(0, top - HALF_HEIGHT);
+      Body body = world.createBody(bd);
+
+      PolygonShape box = new PolygonShape();
+      box.setAsBox(HALF_WIDTH, HALF_HEIGHT);
+      FixtureDef fd = new FixtureDef();
+      fd.shape = box;
+      fd.isSensor = true;
+      sensor = body.createFixture(fd);
+      box.dispose();
+   }
+
+   /**
+    * Bodies that reached the sensor since the last {@link #clear()}, each
+    * once even if it left and re-entered.
+    */
+   public Array<Body> getQueued() {
+      return queued;
+   }
+
+   public void clear() {
+      queued.clear();
+   }
+
+   public Fixture getSensor() {
+      return sensor;
+   }
+
+   /** Height of the sensor's top edge. */
+   public float getTop() {
+      return top;
+   }
+
+   @Override
+   public void beginContact(Fixture a, Fixture b) {
+      if (a == sensor) {
+         queue(b.getBody());
+      } else if (b == sensor) {
+         queue(a.getBody());
+      }
+   }
+
+   private void queue(Body body) {
+      // a ball freed twice could be destroyed by the first free
+      if (!queued.contains(body, true)) queued.add(body);
+   }
+
+   @Override
+   public void endContact(Fixture a, Fixture b) {
+   }
+}
@@ -0,0 +1,43 @@
+package com.tobykurien.gdx2d;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.badlogic.gdx.Files.FileType;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * Memory maps compiled models that are plain files on disk, so the OS pages
+ * them in and nothing is copied onto the heap. Files packed into an APK or
+ * the classpath are copied into a direct buffer instead.
+ * <br/><br/>
+ *
+ * Uses java.nio.channels, so it is left out of the GWT build.
+ */
+public class MappedBufferSource implements CompiledModel.BufferSource {
+   @Override
+   public ByteBuffer open(FileHandle file) {
+      File f = file.file();
+      if (file.type() == FileType.Classpath || !f.isFile()) {
+         return CompiledModel.DIRECT.open(file);
+      }
+
+      RandomAccessFile raf = null;
+      try {
+         raf = new RandomAccessFile(f, "r");
+         return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+      } catch (IOException e) {
+         throw new GdxRuntimeException("Error mapping file: " + file, e);
+      } finally {
+         // the mapping stays valid after the channel is closed
+         if (raf != null) try {
+            raf.close();
+         } catch (IOException ignored) {
+         }
+      }
+   }
+}
@@ -0,0 +1,91 @@
+package com.tobykurien.gdx2d;
+
+/**
+ * Per-frame performance numbers, each kept over a rolling window so the HUD
+ * can show percentiles rather than one jumpy value. The renderer sets the
+ * values of a frame with {@link #set(int, float)} and closes it with
+ * {@link #endFrame()}, which also hands the frame to the writer, if any.
+ * <br/><br/>
+ *
+ * There is no portable way to watch the garbage collector, so a frame
+ * counts as having had a GC when the heap shrank since the frame before.
+ */
+public class Metrics {
+   public static final int STEP_MS = 0;
+   public static final int ANIMATION_MS = 1;
+   public static final int RENDER_MS = 2;
+   public static final int BODIES = 3;
+   public static final int FIXTURES = 4;
+   public static final int CONTACTS = 5;
+   public static final int DRAW_CALLS = 6;
+   public static final int TEXTURE_SWITCHES = 7;
+   public static final int HEAP_MB = 8;
+   public static final int GC = 9;
+   public static final int QUALITY = 10;
+   public static final int COUNT = 11;
+
+   static final String[] NAMES = { "step_ms", "anim_ms", "render_ms", "bodies", "fixtures", "contacts",
+            "draw_calls", "texture_switches", "heap_mb", "gc", "quality" };
+   static final int DEFAULT_WINDOW = 300;
+
+   private final RollingStats[] stats = new RollingStats[COUNT];
+   private final float[] frame = new float[COUNT];
+   private long frames;
+   private long lastHeap;
+   private MetricsWriter writer;
+
+   public Metrics() {
+      this(DEFAULT_WINDOW);
+   }
+
+   /** @param window Number of frames the percentiles are taken over. */
+   public Metrics(int window) {
+      for (int i = 0; i < COUNT; i++) stats[i] = new RollingStats(window);
+   }
+
+   /** Sets a value of the current frame. */
+   public void set(int metric, float value) {
+      frame[metric] = value;
+   }
+
+   /** Sets the heap use of the current frame, in bytes, and notes a GC. */
+   public void setHeap(long bytes) {
+      frame[HEAP_MB] = bytes / (1024f * 1024f);
+      frame[GC] = lastHeap > 0 && bytes < lastHeap ? 1 : 0;
+      lastHeap = bytes;
+   }
+
+   /** Adds the current frame to the windows and to the writer. */
+   public void endFrame() {
+      for (int i = 0; i < COUNT; i++) stats[i].add(frame[i]);
+      frames++;
+      if (writer != null) writer.write(this);
+   }
+
+   public RollingStats get(int metric) {
+      return stats[metric];
+   }
+
+   /** The value of the current frame, or of the last one after endFrame. */
+   public float value(int metric) {
+      return frame[metric];
+   }
+
+   public static String name(int metric) {
+      return NAMES[metric];
+   }
+
+   /** Number of frames ended so far. */
+   public long getFrames() {
+      return frames;
+   }
+
+   /** Sends every frame to the given writer, or stops if null. */
+   public void setWriter(MetricsWriter writer) {
+      this.writer = writer;
+   }
+
+   public MetricsWriter getWriter() {
+      return writer;
+   }
+}
@@ -0,0 +1,53 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+
+/**
+ * Shows {@link Metrics} on screen: the times as p50/p99 over the window, the
+ * counts as of the last frame. The text is rebuilt a few times a second,
+ * not every frame, and into the same buffer.
+ */
+public class MetricsHud {
+   static final int REFRESH_FRAMES = 15;
+
+   private final Metrics metrics;
+   private final BitmapFont font;
+   private final StringBuilder text = new StringBuilder(256);
+   private int frames;
+
+   public MetricsHud(Metrics metrics, BitmapFont font) {
+      this.metrics = metrics;
+      this.font = font;
+   }
+
+   /** Draws the text with its top left corner at x, y. */
+   public void draw(SpriteBatch batch, float x, float y) {
+      if (frames++ % REFRESH_FRAMES == 0) rebuild();
+      font.drawMultiLine(batch, text, x, y);
+   }
+
+   private void rebuild() {
+      text.setLength(0);
+      time("step", Metrics.STEP_MS);
+      time("anim", Metrics.ANIMATION_MS);
+      time("render", Metrics.RENDER_MS);
+      text.append("bodies ").append((int) metrics.value(Metrics.BODIES));
+      text.append(" fixtures ").append((int) metrics.value(Metrics.FIXTURES));
+      text.append(" contacts ").append((int) metrics.value(Metrics.CONTACTS)).append('\n');
+      text.append("draw calls ").append((int) metrics.value(Metrics.DRAW_CALLS));
+      text.append(" texture switches ").append((int) metrics.value(Metrics.TEXTURE_SWITCHES)).append('\n');
+      text.append("heap ").append((int) metrics.value(Metrics.HEAP_MB)).append(" MB");
+      text.append(" gc ").append((int) metrics.get(Metrics.GC).sum());
+      text.append(" quality ").append((int) metrics.value(Metrics.QUALITY));
+   }
+
+   private void time(String label, int metric) {
+      RollingStats stats = metrics.get(metric);
+      text.append(label).append(' ');
+      MetricsWriter.append(text, stats.percentile(0.5f));
+      text.append(" / ");
+      MetricsWriter.append(text, stats.percentile(0.99f));
+      text.append(" ms\n");
+   }
+}
@@ -0,0 +1,110 @@
+package com.tobykurien.gdx2d;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.TimeUtils;
+
+/**
+ * Writes one line per frame of {@link Metrics}, either as CSV with a header
+ * or in the InfluxDB line protocol. Lines are collected in memory and
+ * written out every so many frames, and numbers are formatted by hand, so a
+ * frame costs no I/O and the only garbage is one string per flush.
+ */
+public class MetricsWriter implements Disposable {
+   public enum Format {
+      CSV, LINE_PROTOCOL
+   }
+
+   static final int DEFAULT_FLUSH_FRAMES = 60;
+   static final String MEASUREMENT = "gdx2d";
+
+   private final Writer out;
+   private final Format format;
+   private final int flushFrames;
+   private final StringBuilder lines = new StringBuilder(4096);
+   private int pending;
+   private boolean headerWritten;
+
+   public MetricsWriter(Writer out, Format format, int flushFrames) {
+      if (out == null) throw new NullPointerException("out is null");
+      if (flushFrames < 1) throw new IllegalArgumentException("flushFrames < 1");
+      this.out = out;
+      this.format = format;
+      this.flushFrames = flushFrames;
+   }
+
+   /** Writes to a new file, replacing an existing one. */
+   public static MetricsWriter open(FileHandle file, Format format) {
+      return new MetricsWriter(file.writer(false, "UTF-8"), format, DEFAULT_FLUSH_FRAMES);
+   }
+
+   /** Adds the frame that was just ended. */
+   public void write(Metrics metrics) {
+      if (format == Format.CSV) {
+         if (!headerWritten) {
+            lines.append("time_ms");
+            for (int i = 0; i < Metrics.COUNT; i++) lines.append(',').append(Metrics.name(i));
+            lines.append('\n');
+            headerWritten = true;
+         }
+         lines.append(TimeUtils.millis());
+         for (int i = 0; i < Metrics.COUNT; i++) {
+            lines.append(',');
+            append(lines, metrics.value(i));
+         }
+      } else {
+         lines.append(MEASUREMENT).append(' ');
+         for (int i = 0; i < Metrics.COUNT; i++) {
+            if (i > 0) lines.append(',');
+            lines.append(Metrics.name(i)).append('=');
+            append(lines, metrics.value(i));
+         }
+         lines.append(' ').append(TimeUtils.millis()).append("000000");
+      }
+      lines.append('\n');
+
+      if (++pending >= flushFrames) flush();
+   }
+
+   public void flush() {
+      try {
+         out.append(lines);
+         out.flush();
+      } catch (IOException e) {
+         throw new GdxRuntimeException(e);
+      }
+      lines.setLength(0);
+      pending = 0;
+   }
+
+   @Override
+   public void dispose() {
+      flush();
+      try {
+         out.close();
+      } catch (IOException e) {
+         throw new GdxRuntimeException(e);
+      }
+   }
+
+   /** Appends with three decimals, dropping them for whole numbers. */
+   static void append(StringBuilder sb, float value) {
+      if (value < 0) {
+         sb.append('-');
+         value = -value;
+      }
+      long thousandths = (long) (value * 1000 + 0.5f);
+      sb.append(thousandths / 1000);
+      int fraction = (int) (thousandths % 1000);
+      if (fraction != 0) {
+         sb.append('.');
+         if (fraction < 100) sb.append('0');
+         if (fraction < 10) sb.append('0');
+         sb.append(fraction);
+      }
+   }
+}
@@ -0,0 +1,23 @@
+package com.tobykurien.gdx2d;
+
+/**
+ * Runs a loop over a range of indices, possibly split across threads. The
+ * body must only write to state owned by the indices it is given.
+ */
+public interface ParallelFor {
+   /** The loop body, for the indices from (inclusive) to (exclusive). */
+   interface Range {
+      void run(int from, int to);
+   }
+
+   /** Runs the whole range on the calling thread. */
+   ParallelFor SEQUENTIAL = new ParallelFor() {
+      @Override
+      public void run(int count, Range range) {
+         if (count > 0) range.run(0, count);
+      }
+   };
+
+   /** Runs range over 0 to count and returns when all of it is done. */
+   void run(int count, Range range);
+}
@@ -0,0 +1,516 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.CircleShape;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.physics.box2d.Shape;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * A position based solver for many small balls of one size, as a cheaper
+ * stand-in for Box2D bodies. Particles live in flat float arrays; each step
+ * moves them by their velocity, pushes overlapping pairs and particles
+ * inside static shapes apart for a few iterations, and takes the new
+ * velocity from how far they ended up moving. Fast particles split the
+ * step into substeps so that none moves more than its radius at a time,
+ * otherwise falling columns pass through each other and through the floor;
+ * a resting pile takes a single substep.
+ * <br/><br/>
+ *
+ * Pairs are found through a uniform grid with cells one and a half
+ * diameters wide, rebuilt every substep with a counting sort. Finding each
+ * particle's neighbours only reads the grid, so that part can run on
+ * several threads through a {@link ParallelFor}.
+ * <br/><br/>
+ *
+ * Static shapes are copied from Box2D bodies ({@link #addStatic(Body)}), in
+ * world coordinates, so the bottle from {@link BodyEditorLoader} can be
+ * used as is. Box2D never sees the particles: they collide with what was
+ * added here and with each other, nothing else. There is no friction
+ * either, so deep piles flow out flat instead of heaping up.
+ */
+public class ParticleSystem {
+   static final int MAX_NEIGHBORS = 8;
+   static final int MAX_GRID_CELLS = 1 << 20;
+   static final int DEFAULT_ITERATIONS = 4;
+   static final int MAX_SUBSTEPS = 8;
+
+   private final float radius;
+   private final int capacity;
+   private int count;
+
+   // Particles
+   private final float[] x, y;
+   private final float[] prevX, prevY;
+   private final float[] startX, startY; // at the start of the substep
+   private final float[] vx, vy;
+
+   private float gravityX = 0, gravityY = -10;
+   private int iterations = DEFAULT_ITERATIONS;
+   private float damping = 0.995f;
+   private ParallelFor parallel = ParallelFor.SEQUENTIAL;
+
+   // Grid, rebuilt every step over the bounds of the particles
+   private float gridX, gridY;
+   private int gridWidth, gridHeight;
+   private final float cellSize;
+   private int[] cellStart = new int[0];
+   private final int[] cellOf;
+   private final int[] sorted;
+
+   // Neighbours within reach of each particle
+   private final int[] neighbors;
+   private final int[] neighborCount;
+   private final ParallelFor.Range findNeighbors = new ParallelFor.Range() {
+      @Override
+      public void run(int from, int to) {
+         findNeighbors(from, to);
+      }
+   };
+
+   // Static shapes: convex polygons with outward normals, and circles
+   private final Array<float[]> polygons = new Array<float[]>();
+   private final Array<float[]> normals = new Array<float[]>();
+   private final Array<float[]> bounds = new Array<float[]>();
+   private float[] circles = new float[0];
+   private int circleCount;
+
+   // Reusable stuff
+   private final Vector2 tmp = new Vector2();
+
+   /**
+    * @param capacity The most particles there can be at a time.
+    * @param radius The radius of every particle.
+    */
+   public ParticleSystem(int capacity, float radius) {
+      if (capacity < 1) throw new IllegalArgumentException("capacity < 1");
+      if (radius <= 0) throw new IllegalArgumentException("radius <= 0");
+      this.capacity = capacity;
+      this.radius = radius;
+      // cells as wide as the neighbour reach: a diameter, and a radius
+      // for pairs that close in during the substep
+      this.cellSize = radius * 3;
+      x = new float[capacity];
+      y = new float[capacity];
+      prevX = new float[capacity];
+      prevY = new float[capacity];
+      startX = new float[capacity];
+      startY = new float[capacity];
+      vx = new float[capacity];
+      vy = new float[capacity];
+      cellOf = new int[capacity];
+      sorted = new int[capacity];
+      neighbors = new int[capacity * MAX_NEIGHBORS];
+      neighborCount = new int[capacity];
+   }
+
+   /**
+    * Adds a particle at rest.
+    *
+    * @return Its index, or -1 if the system is full.
+    */
+   public int add(float px, float py) {
+      return add(px, py, 0, 0);
+   }
+
+   /**
+    * Adds a particle moving at the given velocity.
+    *
+    * @return Its index, or -1 if the system is full.
+    */
+   public int add(float px, float py, float velocityX, float velocityY) {
+      if (count == capacity) return -1;
+      int i = count++;
+      x[i] = prevX[i] = startX[i] = px;
+      y[i] = prevY[i] = startY[i] = py;
+      vx[i] = velocityX;
+      vy[i] = velocityY;
+      return i;
+   }
+
+   /** Removes particle i. The last particle takes its index. */
+   public void remove(int i) {
+      int last = --count;
+      x[i] = x[last];
+      y[i] = y[last];
+      prevX[i] = prevX[last];
+      prevY[i] = prevY[last];
+      startX[i] = startX[last];
+      startY[i] = startY[last];
+      vx[i] = vx[last];
+      vy[i] = vy[last];
+   }
+
+   /**
+    * Removes the particles below the given height, e.g. those that fell out
+    * of view.
+    *
+    * @return The number removed.
+    */
+   public int removeBelow(float bottom) {
+      int removed = 0;
+      for (int i = count - 1; i >= 0; i--) {
+         if (y[i] < bottom) {
+            remove(i);
+            removed++;
+         }
+      }
+      return removed;
+   }
+
+   public void clear() {
+      count = 0;
+   }
+
+   /**
+    * Copies the polygon and circle fixtures of a static body, as they are
+    * placed now. Other fixture types are ignored.
+    */
+   public void addStatic(Body body) {
+      Array<Fixture> fixtures = body.getFixtureList();
+      for (int f = 0; f < fixtures.size; f++) {
+         Fixture fixture = fixtures.get(f);
+         if (fixture.isSensor()) continue;
+         if (fixture.getType() == Shape.Type.Polygon) {
+            PolygonShape shape = (PolygonShape) fixture.getShape();
+            float[] vertices = new float[shape.getVertexCount() * 2];
+            for (int i = 0; i < vertices.length; i += 2) {
+               shape.getVertex(i / 2, tmp);
+               Vector2 p = body.getWorldPoint(tmp);
+               vertices[i] = p.x;
+               vertices[i + 1] = p.y;
+            }
+            addPolygon(vertices);
+         } else if (fixture.getType() == Shape.Type.Circle) {
+            CircleShape shape = (CircleShape) fixture.getShape();
+            Vector2 p = body.getWorldPoint(shape.getPosition());
+            addCircle(p.x, p.y, shape.getRadius());
+         }
+      }
+   }
+
+   /** Adds a static convex polygon, counter-clockwise, in world coordinates. */
+   public void addPolygon(float[] vertices) {
+      int n = vertices.length / 2;
+      float[] normal = new float[n * 2];
+      float[] box = { Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+      for (int i = 0; i < n; i++) {
+         float x1 = vertices[i * 2], y1 = vertices[i * 2 + 1];
+         float x2 = vertices[(i + 1) % n * 2], y2 = vertices[(i + 1) % n * 2 + 1];
+         float len = (float) Math.sqrt((x2 - x1) * (x2 - x1) + (y2 - y1) * (y2 - y1));
+         normal[i * 2] = (y2 - y1) / len;
+         normal[i * 2 + 1] = -(x2 - x1) / len;
+         box[0] = Math.min(box[0], x1);
+         box[1] = Math.min(box[1], y1);
+         box[2] = Math.max(box[2], x1);
+         box[3] = Math.max(box[3], y1);
+      }
+      polygons.add(vertices);
+      normals.add(normal);
+      bounds.add(box);
+   }
+
+   /** Adds a static circle in world coordinates. */
+   public void addCircle(float cx, float cy, float r) {
+      if (circleCount * 3 == circles.length) {
+         float[] newCircles = new float[circles.length * 2 + 3];
+         System.arraycopy(circles, 0, newCircles, 0, circles.length);
+         circles = newCircles;
+      }
+      circles[circleCount * 3] = cx;
+      circles[circleCount * 3 + 1] = cy;
+      circles[circleCount * 3 + 2] = r;
+      circleCount++;
+   }
+
+   /** Advances all particles by dt seconds. */
+   public void step(float dt) {
+      if (count == 0) return;
+
+      float maxSpeed2 = 0;
+      for (int i = 0; i < count; i++) {
+         prevX[i] = x[i];
+         prevY[i] = y[i];
+         maxSpeed2 = Math.max(maxSpeed2, vx[i] * vx[i] + vy[i] * vy[i]);
+      }
+      float gravity = (float) Math.sqrt(gravityX * gravityX + gravityY * gravityY);
+      float move = ((float) Math.sqrt(maxSpeed2) + gravity * dt) * dt;
+      int substeps = Math.max(1, Math.min(MAX_SUBSTEPS, (int) Math.ceil(move / radius)));
+      float h = dt / substeps;
+      for (int s = 0; s < substeps; s++) substep(h);
+
+      for (int i = 0; i < count; i++) {
+         vx[i] *= damping;
+         vy[i] *= damping;
+      }
+   }
+
+   private void substep(float h) {
+      // neighbours before the move, with reach for it
+      buildGrid();
+      parallel.run(count, findNeighbors);
+
+      // Overlap left over from before is pushed apart without turning it
+      // into velocity, or deep piles never stop bouncing
+      for (int i = 0; i < count; i++) {
+         startX[i] = x[i];
+         startY[i] = y[i];
+      }
+      solvePairs();
+      solveStatics();
+
+      // predict, no further than a radius so nothing passes through
+      float maxSpeed = radius / h;
+      float maxSpeed2 = maxSpeed * maxSpeed;
+      for (int i = 0; i < count; i++) {
+         startX[i] = x[i];
+         startY[i] = y[i];
+         float vxi = vx[i] + gravityX * h, vyi = vy[i] + gravityY * h;
+         float speed2 = vxi * vxi + vyi * vyi;
+         if (speed2 > maxSpeed2) {
+            float scale = maxSpeed / (float) Math.sqrt(speed2);
+            vxi *= scale;
+            vyi *= scale;
+         }
+         x[i] += vxi * h;
+         y[i] += vyi * h;
+      }
+
+      for (int k = 0; k < iterations; k++) {
+         solvePairs();
+         solveStatics();
+      }
+
+      // velocity from what the constraints left of the move
+      float inv = 1 / h;
+      for (int i = 0; i < count; i++) {
+         vx[i] = (x[i] - startX[i]) * inv;
+         vy[i] = (y[i] - startY[i]) * inv;
+      }
+   }
+
+   private void buildGrid() {
+      float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+      float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+      for (int i = 0; i < count; i++) {
+         minX = Math.min(minX, x[i]);
+         minY = Math.min(minY, y[i]);
+         maxX = Math.max(maxX, x[i]);
+         maxY = Math.max(maxY, y[i]);
+      }
+      gridX = minX;
+      gridY = minY;
+      // particles far out are clamped into the border cells, which is
+      // slower but still correct
+      gridWidth = Math.max(1, Math.min((int) ((maxX - minX) / cellSize) + 1, 1024));
+      gridHeight = Math.max(1, Math.min((int) ((maxY - minY) / cellSize) + 1, MAX_GRID_CELLS / gridWidth));
+      int cells = gridWidth * gridHeight;
+      if (cellStart.length < cells + 1) cellStart = new int[Math.max(cells + 1, cellStart.length * 2)];
+
+      int[] cellStart = this.cellStart;
+      for (int c = 0; c <= cells; c++) cellStart[c] = 0;
+      for (int i = 0; i < count; i++) {
+         int c = cell(x[i], y[i]);
+         cellOf[i] = c;
+         cellStart[c + 1]++;
+      }
+      for (int c = 0; c < cells; c++) cellStart[c + 1] += cellStart[c];
+      // cellStart[c] now points at the start of cell c; fill, then shift back
+      for (int i = 0; i < count; i++) {
+         sorted[cellStart[cellOf[i]]++] = i;
+      }
+      for (int c = cells; c > 0; c--) cellStart[c] = cellStart[c - 1];
+      cellStart[0] = 0;
+   }
+
+   private int cell(float px, float py) {
+      int cx = Math.min(gridWidth - 1, Math.max(0, (int) ((px - gridX) / cellSize)));
+      int cy = Math.min(gridHeight - 1, Math.max(0, (int) ((py - gridY) / cellSize)));
+      return cy * gridWidth + cx;
+   }
+
+   /** Broad phase for particles from to to, reads the grid only. */
+   private void findNeighbors(int from, int to) {
+      float reach2 = cellSize * cellSize;
+      for (int i = from; i < to; i++) {
+         int c = cellOf[i];
+         int cx = c % gridWidth, cy = c / gridWidth;
+         int n = 0;
+         int base = i * MAX_NEIGHBORS;
+         for (int gy = Math.max(0, cy - 1); gy <= Math.min(gridHeight - 1, cy + 1); gy++) {
+            for (int gx = Math.max(0, cx - 1); gx <= Math.min(gridWidth - 1, cx + 1); gx++) {
+               int g = gy * gridWidth + gx;
+               for (int s = cellStart[g], e = cellStart[g + 1]; s < e && n < MAX_NEIGHBORS; s++) {
+                  int j = sorted[s];
+                  if (j <= i) continue; // each pair once
+                  float dx = x[j] - x[i], dy = y[j] - y[i];
+                  if (dx * dx + dy * dy < reach2) neighbors[base + n++] = j;
+               }
+            }
+         }
+         neighborCount[i] = n;
+      }
+   }
+
+   private void solvePairs() {
+      float minDist = radius * 2;
+      float minDist2 = minDist * minDist;
+      for (int i = 0; i < count; i++) {
+         int base = i * MAX_NEIGHBORS;
+         for (int k = 0, n = neighborCount[i]; k < n; k++) {
+            int j = neighbors[base + k];
+            float dx = x[j] - x[i], dy = y[j] - y[i];
+            float d2 = dx * dx + dy * dy;
+            if (d2 >= minDist2 || d2 == 0) continue;
+            float d = (float) Math.sqrt(d2);
+            float push = (minDist - d) / d * 0.5f;
+            dx *= push;
+            dy *= push;
+            x[i] -= dx;
+            y[i] -= dy;
+            x[j] += dx;
+            y[j] += dy;
+         }
+      }
+   }
+
+   private void solveStatics() {
+      float r = radius;
+      for (int p = 0; p < polygons.size; p++) {
+         float[] box = bounds.get(p);
+         float[] vertices = polygons.get(p);
+         float[] normal = normals.get(p);
+         for (int i = 0; i < count; i++) {
+            float px = x[i], py = y[i];
+            if (px + r < box[0] || py + r < box[1] || px - r > box[2] || py - r > box[3]) continue;
+            collidePolygon(i, vertices, normal);
+         }
+      }
+      for (int c = 0; c < circleCount; c++) {
+         float cx = circles[c * 3], cy = circles[c * 3 + 1], reach = circles[c * 3 + 2] + r;
+         for (int i = 0; i < count; i++) {
+            float dx = x[i] - cx, dy = y[i] - cy;
+            float d2 = dx * dx + dy * dy;
+            if (d2 >= reach * reach || d2 == 0) continue;
+            float d = (float) Math.sqrt(d2);
+            x[i] = cx + dx / d * reach;
+            y[i] = cy + dy / d * reach;
+         }
+      }
+   }
+
+   /** Pushes particle i out of a convex polygon, as Box2D's circle test. */
+   private void collidePolygon(int i, float[] vertices, float[] normal) {
+      float px = x[i], py = y[i];
+      int n = vertices.length / 2;
+      int edge = 0;
+      float separation = -Float.MAX_VALUE;
+      for (int e = 0; e < n; e++) {
+         float s = normal[e * 2] * (px - vertices[e * 2]) + normal[e * 2 + 1] * (py - vertices[e * 2 + 1]);
+         if (s > radius) return;
+         if (s > separation) {
+            separation = s;
+            edge = e;
+         }
+      }
+
+      if (separation <= 0) {
+         // inside: leave through the face it came in by, not the nearest
+         // one, or fast particles get pushed out the far side of thin walls
+         float qx = startX[i], qy = startY[i];
+         separation = -Float.MAX_VALUE;
+         for (int e = 0; e < n; e++) {
+            float s = normal[e * 2] * (qx - vertices[e * 2]) + normal[e * 2 + 1] * (qy - vertices[e * 2 + 1]);
+            if (s > separation) {
+               separation = s;
+               edge = e;
+            }
+         }
+         separation = normal[edge * 2] * (px - vertices[edge * 2]) + normal[edge * 2 + 1] * (py - vertices[edge * 2 + 1]);
+      }
+
+      float x1 = vertices[edge * 2], y1 = vertices[edge * 2 + 1];
+      float x2 = vertices[(edge + 1) % n * 2], y2 = vertices[(edge + 1) % n * 2 + 1];
+      if (separation > 0) {
+         // outside: the closest feature may be a corner
+         float u1 = (px - x1) * (x2 - x1) + (py - y1) * (y2 - y1);
+         float u2 = (px - x2) * (x1 - x2) + (py - y2) * (y1 - y2);
+         if (u1 <= 0 || u2 <= 0) {
+            float vx = u1 <= 0 ? x1 : x2, vy = u1 <= 0 ? y1 : y2;
+            float dx = px - vx, dy = py - vy;
+            float d2 = dx * dx + dy * dy;
+            if (d2 >= radius * radius || d2 == 0) return;
+            float d = (float) Math.sqrt(d2);
+            x[i] = vx + dx / d * radius;
+            y[i] = vy + dy / d * radius;
+            return;
+         }
+      }
+      float push = radius - separation;
+      x[i] = px + normal[edge * 2] * push;
+      y[i] = py + normal[edge * 2 + 1] * push;
+   }
+
+   /** Runs the neighbour search on the given executor, e.g. the desktop's ForkJoinParallel. */
+   public void setParallel(ParallelFor parallel) {
+      if (parallel == null) throw new NullPointerException("parallel is null");
+      this.parallel = parallel;
+   }
+
+   public void setGravity(float gx, float gy) {
+      gravityX = gx;
+      gravityY = gy;
+   }
+
+   /** More iterations make piles stiffer and steps slower. */
+   public void setIterations(int iterations) {
+      if (iterations < 1) throw new IllegalArgumentException("iterations < 1");
+      this.iterations = iterations;
+   }
+
+   /** Fraction of the velocity kept per step, below 1 so piles settle. */
+   public void setDamping(float damping) {
+      this.damping = damping;
+   }
+
+   public int getCount() {
+      return count;
+   }
+
+   public int getCapacity() {
+      return capacity;
+   }
+
+   public float getRadius() {
+      return radius;
+   }
+
+   /** Positions after the last step, index 0 to {@link #getCount()}. */
+   public float[] getX() {
+      return x;
+   }
+
+   public float[] getY() {
+      return y;
+   }
+
+   /** Velocities after the last step. */
+   public float[] getVX() {
+      return vx;
+   }
+
+   public float[] getVY() {
+      return vy;
+   }
+
+   /** Positions before the last step, for drawing in between. */
+   public float[] getPrevX() {
+      return prevX;
+   }
+
+   public float[] getPrevY() {
+      return prevY;
+   }
+}
@@ -0,0 +1,109 @@
+package com.tobykurien.gdx2d;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.utils.TimeUtils;
+
+/**
+ * Owns the world and steps it on a background thread at the simulation's
+ * step rate. After each step the drawable state is captured into a
+ * snapshot and swapped with the render thread's through a three-slot
+ * exchange: the physics thread always has a buffer to write, the render
+ * thread always has a complete one to read, and neither waits for the
+ * other.
+ * <br/><br/>
+ *
+ * Uses java.util.concurrent, so it is left out of the GWT build.
+ */
+public class PhysicsThread implements ThreadedPhysics, Runnable, CommandQueue.Handler {
+   static final int QUEUE_SIZE = 256;
+   private static final int FRESH = 4; // set when the ready slot is newer than the front one
+   private static final int INDEX = 3;
+
+   private final CommandQueue commands = new CommandQueue(QUEUE_SIZE);
+   private final TransformSnapshot[] buffers = {
+            new TransformSnapshot(), new TransformSnapshot(), new TransformSnapshot() };
+   private final AtomicInteger ready = new AtomicInteger(1);
+   private int back = 0; // physics thread only
+   private int front = 2; // render thread only
+
+   private Simulation sim;
+   private Thread thread;
+   private volatile boolean running;
+
+   @Override
+   public void start(Simulation sim) {
+      if (thread != null) throw new IllegalStateException("already started");
+      this.sim = sim;
+      running = true;
+      thread = new Thread(this, "physics");
+      thread.setDaemon(true);
+      thread.start();
+   }
+
+   @Override
+   public CommandQueue getCommands() {
+      return commands;
+   }
+
+   @Override
+   public TransformSnapshot latest() {
+      if ((ready.get() & FRESH) != 0) {
+         front = ready.getAndSet(front) & INDEX;
+      }
+      return buffers[front];
+   }
+
+   @Override
+   public void run() {
+      long next = TimeUtils.nanoTime();
+
+      while (running) {
+         // the rate can change, e.g. by the quality governor
+         float timeStep = 1 / sim.getStepRate();
+         long stepNanos = (long) (timeStep * 1000000000L);
+         commands.drain(this);
+         sim.update(timeStep);
+
+         buffers[back].capture(sim, TimeUtils.nanoTime(), stepNanos);
+         back = ready.getAndSet(back | FRESH) & INDEX;
+
+         next += stepNanos;
+         long wait = next - TimeUtils.nanoTime();
+         if (wait > 0) {
+            try {
+               Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+            } catch (InterruptedException e) {
+               break;
+            }
+         } else if (-wait > stepNanos * sim.getMaxSubsteps()) {
+            // too far behind to catch up, slow down instead
+            next = TimeUtils.nanoTime();
+         }
+      }
+   }
+
+   @Override
+   public void spawnBall() {
+      sim.spawnBall();
+   }
+
+   @Override
+   public void freeBall(Body body) {
+      sim.freeBall(body);
+   }
+
+   /** Stops the thread and waits for it, after which the world may be disposed. */
+   @Override
+   public void dispose() {
+      running = false;
+      if (thread == null) return;
+      try {
+         thread.join();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      thread = null;
+   }
+}
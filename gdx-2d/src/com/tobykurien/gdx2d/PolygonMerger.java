@@ -0,0 +1,144 @@
+package com.tobykurien.gdx2d;
+
+import java.util.List;
+
+import com.badlogic.gdx.utils.FloatArray;
+import com.tobykurien.gdx2d.BodyEditorLoader.PolygonModel;
+
+/**
+ * Greedily merges adjacent convex polygons into larger convex ones. The
+ * body editor decomposes shapes into many small polygons, and each becomes
+ * its own fixture, broadphase proxy and set of contacts.
+ * <br/><br/>
+ *
+ * Two polygons are candidates when they share an edge. Their merge is the
+ * convex hull of both, which is accepted if it has no more than
+ * {@link #MAX_VERTICES} vertices and covers at most the area tolerance
+ * more than the two polygons did (the hull fills in any notch between
+ * them). Each round merges the candidate pair that adds the least area.
+ */
+public final class PolygonMerger {
+   /** b2_maxPolygonVertices */
+   public static final int MAX_VERTICES = 8;
+   static final float EPSILON = 1e-5f;
+   static final float AREA_EPSILON = 1e-4f; // rounding in exact merges
+
+   private PolygonMerger() {
+   }
+
+   /**
+    * Merges the polygons in place.
+    *
+    * @param areaTolerance How much larger than the two originals a merged
+    *        polygon may be, as a fraction of their area.
+    */
+   public static void merge(List<PolygonModel> polygons, float areaTolerance) {
+      FloatArray points = new FloatArray();
+
+      while (true) {
+         int bestA = -1, bestB = -1;
+         float[] bestHull = null;
+         float bestGrowth = Float.MAX_VALUE;
+
+         for (int a = 0, n = polygons.size(); a < n; a++) {
+            float[] va = polygons.get(a).vertices;
+            for (int b = a + 1; b < n; b++) {
+               float[] vb = polygons.get(b).vertices;
+               if (!sharesEdge(va, vb)) continue;
+
+               float[] hull = hull(va, vb, points);
+               if (hull == null) continue;
+
+               float sum = area(va) + area(vb);
+               float growth = (area(hull) - sum) / sum;
+               if (growth <= areaTolerance + AREA_EPSILON && growth < bestGrowth) {
+                  bestGrowth = growth;
+                  bestHull = hull;
+                  bestA = a;
+                  bestB = b;
+               }
+            }
+         }
+
+         if (bestHull == null) return;
+         polygons.get(bestA).vertices = bestHull;
+         polygons.remove(bestB);
+      }
+   }
+
+   static boolean sharesEdge(float[] a, float[] b) {
+      int shared = 0;
+      for (int i = 0; i < a.length; i += 2) {
+         for (int j = 0; j < b.length; j += 2) {
+            if (Math.abs(a[i] - b[j]) < EPSILON && Math.abs(a[i + 1] - b[j + 1]) < EPSILON) {
+               if (++shared == 2) return true;
+               break;
+            }
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Convex hull of both polygons in counter-clockwise order (monotone
+    * chain), or null if it has too many vertices.
+    */
+   static float[] hull(float[] a, float[] b, FloatArray points) {
+      points.clear();
+      points.addAll(a);
+      points.addAll(b);
+      int n = points.size / 2;
+      float[] p = points.items;
+      sortByXThenY(p, n);
+
+      float[] hull = new float[(n + 1) * 2];
+      int k = 0;
+      for (int i = 0; i < n; i++) { // lower hull
+         while (k >= 2 && cross(hull, k - 2, k - 1, p[i * 2], p[i * 2 + 1]) <= EPSILON * EPSILON) k--;
+         hull[k * 2] = p[i * 2];
+         hull[k * 2 + 1] = p[i * 2 + 1];
+         k++;
+      }
+      for (int i = n - 2, lower = k + 1; i >= 0; i--) { // upper hull
+         while (k >= lower && cross(hull, k - 2, k - 1, p[i * 2], p[i * 2 + 1]) <= EPSILON * EPSILON) k--;
+         hull[k * 2] = p[i * 2];
+         hull[k * 2 + 1] = p[i * 2 + 1];
+         k++;
+      }
+      k--; // the first point is repeated at the end
+
+      if (k < 3 || k > MAX_VERTICES) return null;
+      float[] result = new float[k * 2];
+      System.arraycopy(hull, 0, result, 0, k * 2);
+      return result;
+   }
+
+   static float area(float[] v) {
+      float sum = 0;
+      for (int i = 0, n = v.length; i < n; i += 2) {
+         int j = (i + 2) % n;
+         sum += v[i] * v[j + 1] - v[j] * v[i + 1];
+      }
+      return Math.abs(sum) / 2;
+   }
+
+   private static float cross(float[] h, int o, int a, float bx, float by) {
+      float ox = h[o * 2], oy = h[o * 2 + 1];
+      return (h[a * 2] - ox) * (by - oy) - (h[a * 2 + 1] - oy) * (bx - ox);
+   }
+
+   private static void sortByXThenY(float[] p, int n) {
+      // insertion sort, polygons are tiny
+      for (int i = 1; i < n; i++) {
+         float x = p[i * 2], y = p[i * 2 + 1];
+         int j = i - 1;
+         while (j >= 0 && (p[j * 2] > x || (p[j * 2] == x && p[j * 2 + 1] > y))) {
+            p[(j + 1) * 2] = p[j * 2];
+            p[(j + 1) * 2 + 1] = p[j * 2 + 1];
+            j--;
+         }
+         p[(j + 1) * 2] = x;
+         p[(j + 1) * 2 + 1] = y;
+      }
+   }
+}
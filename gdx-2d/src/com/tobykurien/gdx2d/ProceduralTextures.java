@@ -0,0 +1,83 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.glutils.PixmapTextureData;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.LongMap;
+
+/**
+ * Builds simple textures from code and hands out the same texture for the
+ * same size, color and shape, so everything drawn with it can share one
+ * batch. The textures live until the cache is disposed.
+ * <br/><br/>
+ *
+ * The textures are managed: each keeps its pixmap, so libgdx can upload it
+ * again when the GL context is lost, e.g. when Android pauses the game.
+ */
+public class ProceduralTextures implements Disposable {
+   public enum Shape {
+      CIRCLE, SQUARE
+   }
+
+   private final LongMap<Texture> textures = new LongMap<Texture>();
+   private final Array<Pixmap> pixmaps = new Array<Pixmap>();
+
+   /**
+    * Returns the texture of the given size (in pixels, square), color and
+    * shape, building it on first use.
+    */
+   public Texture get(int size, Color color, Shape shape) {
+      if (size <= 0 || size > 0xffffff) throw new IllegalArgumentException("size: " + size);
+      long key = (long) Color.rgba8888(color) << 32 | (long) size << 8 | shape.ordinal();
+      Texture texture = textures.get(key);
+      if (texture == null) {
+         texture = create(size, color, shape);
+         textures.put(key, texture);
+      }
+      return texture;
+   }
+
+   /** Number of distinct textures built so far. */
+   public int size() {
+      return textures.size;
+   }
+
+   @Override
+   public void dispose() {
+      for (Texture texture : textures.values()) {
+         texture.dispose();
+      }
+      textures.clear();
+      for (int i = 0; i < pixmaps.size; i++) {
+         pixmaps.get(i).dispose();
+      }
+      pixmaps.clear();
+   }
+
+   private Texture create(int size, Color color, Shape shape) {
+      Pixmap pm = draw(size, color, shape);
+      pixmaps.add(pm);
+      return new Texture(new PixmapTextureData(pm, null, false, false, true));
+   }
+
+   /**
+    * Draws the image of a texture into a new pixmap, e.g. to pack it into an
+    * atlas. Dispose the pixmap when done.
+    */
+   public static Pixmap draw(int size, Color color, Shape shape) {
+      Pixmap pm = new Pixmap(size, size, Pixmap.Format.RGBA8888);
+      pm.setColor(color);
+      switch (shape) {
+      case CIRCLE:
+         pm.fillCircle(size / 2, size / 2, size / 2);
+         break;
+      case SQUARE:
+         pm.fill();
+         break;
+      }
+      return pm;
+   }
+}
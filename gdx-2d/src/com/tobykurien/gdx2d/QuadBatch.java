@@ -0,0 +1,115 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.MathUtils;
+
+/**
+ * Collects many quads that share one texture region into a single vertex
+ * array and hands it to a {@link SpriteBatch} in one go. The batch only
+ * flushes when it is full, so thousands of balls cost a handful of draw
+ * calls, and no per-ball {@link BodySprite} state is touched.
+ * <br/><br/>
+ *
+ * Vertices are laid out like {@link SpriteBatch} expects them: x, y, color,
+ * u, v for each of the four corners.
+ */
+public class QuadBatch {
+   static final int VERTEX_SIZE = 5;
+   static final int QUAD_SIZE = 4 * VERTEX_SIZE;
+
+   private TextureRegion region;
+   private float color = Color.WHITE.toFloatBits();
+   private float[] vertices;
+   private int count;
+
+   public QuadBatch(int quads) {
+      vertices = new float[Math.max(1, quads) * QUAD_SIZE];
+   }
+
+   /** Starts a new array of quads drawn with the given region. */
+   public void begin(TextureRegion region) {
+      this.region = region;
+      count = 0;
+   }
+
+   public void setColor(Color color) {
+      this.color = color.toFloatBits();
+   }
+
+   public TextureRegion getRegion() {
+      return region;
+   }
+
+   /** Number of quads added since {@link #begin(TextureRegion)}. */
+   public int size() {
+      return count / QUAD_SIZE;
+   }
+
+   /**
+    * Adds a quad centred on its origin, the way a {@link BodySprite} is placed
+    * on its body.
+    *
+    * @param x The world position of the origin.
+    * @param y The world position of the origin.
+    * @param originX The origin, relative to the bottom left corner.
+    * @param originY The origin, relative to the bottom left corner.
+    * @param degrees The rotation around the origin.
+    */
+   public void add(float x, float y, float originX, float originY, float width, float height,
+            float scaleX, float scaleY, float degrees) {
+      if (count + QUAD_SIZE > vertices.length) grow();
+
+      float localX = -originX * scaleX;
+      float localY = -originY * scaleY;
+      float localX2 = (width - originX) * scaleX;
+      float localY2 = (height - originY) * scaleY;
+
+      float x1, y1, x2, y2, x3, y3, x4, y4;
+      if (degrees != 0) {
+         float cos = MathUtils.cosDeg(degrees);
+         float sin = MathUtils.sinDeg(degrees);
+         x1 = localX * cos - localY * sin + x;
+         y1 = localY * cos + localX * sin + y;
+         x2 = localX * cos - localY2 * sin + x;
+         y2 = localY2 * cos + localX * sin + y;
+         x3 = localX2 * cos - localY2 * sin + x;
+         y3 = localY2 * cos + localX2 * sin + y;
+         x4 = x1 + (x3 - x2);
+         y4 = y3 - (y2 - y1);
+      } else {
+         x1 = x2 = localX + x;
+         x3 = x4 = localX2 + x;
+         y1 = y4 = localY + y;
+         y2 = y3 = localY2 + y;
+      }
+
+      float u = region.getU(), v = region.getV2();
+      float u2 = region.getU2(), v2 = region.getV();
+      float c = color;
+      float[] vertices = this.vertices;
+      int i = count;
+      vertices[i++] = x1; vertices[i++] = y1; vertices[i++] = c; vertices[i++] = u; vertices[i++] = v;
+      vertices[i++] = x2; vertices[i++] = y2; vertices[i++] = c; vertices[i++] = u; vertices[i++] = v2;
+      vertices[i++] = x3; vertices[i++] = y3; vertices[i++] = c; vertices[i++] = u2; vertices[i++] = v2;
+      vertices[i++] = x4; vertices[i++] = y4; vertices[i++] = c; vertices[i++] = u2; vertices[i++] = v;
+      count = i;
+   }
+
+   /**
+    * Draws all quads added since {@link #begin(TextureRegion)} and starts
+    * over. Must be called between {@link SpriteBatch#begin()} and
+    * {@link SpriteBatch#end()}.
+    */
+   public void draw(SpriteBatch batch) {
+      if (count > 0 && region != null) batch.draw(region.getTexture(), vertices, 0, count);
+      count = 0;
+   }
+
+   private void grow() {
+      float[] newVertices = new float[(int) (vertices.length * 1.75f) + QUAD_SIZE];
+      System.arraycopy(vertices, 0, newVertices, 0, count);
+      vertices = newVertices;
+   }
+}
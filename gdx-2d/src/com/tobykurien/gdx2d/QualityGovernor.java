@@ -0,0 +1,137 @@
+package com.tobykurien.gdx2d;
+
+/**
+ * Trades simulation quality for frame time. Each frame the renderer reports
+ * how long the frame's work took; when that stays over the frame budget the
+ * governor steps down one {@link Level} (fewer solver iterations, a lower
+ * physics rate, slower spawning, fewer balls), and when it stays well under
+ * the budget it steps back up.
+ * <br/><br/>
+ *
+ * Going down looks at the median of a short window, so a pile that got too
+ * heavy is noticed within half a second but a single GC pause is not.
+ * Going up needs a longer window whose 90th percentile is under
+ * {@link #UP_FRACTION} of the budget, and both windows start over after a
+ * change, so a level that was just left for being too slow isn't tried
+ * again right away and the level doesn't flip back and forth.
+ * <br/><br/>
+ *
+ * The level is volatile and the levels are immutable: the render thread
+ * updates the governor while a physics thread reads it.
+ */
+public class QualityGovernor {
+   public static final float DEFAULT_BUDGET_MILLIS = 16;
+   static final int DOWN_FRAMES = 30;
+   static final int UP_FRAMES = 180;
+   static final float UP_FRACTION = 0.6f;
+
+   /** The settings of one quality level. */
+   public static class Level {
+      public final int velocityIterations, positionIterations;
+      /** Physics steps per second. */
+      public final float stepRate;
+      /** Least time between two spawns while the button is held. */
+      public final long spawnMillis;
+      /** Most balls in play, pooled ones not counted. */
+      public final int maxBalls;
+
+      public Level(int velocityIterations, int positionIterations, float stepRate, long spawnMillis, int maxBalls) {
+         this.velocityIterations = velocityIterations;
+         this.positionIterations = positionIterations;
+         this.stepRate = stepRate;
+         this.spawnMillis = spawnMillis;
+         this.maxBalls = maxBalls;
+      }
+   }
+
+   /**
+    * Best first; the first is what the game runs at without a governor,
+    * with no ball cap.
+    */
+   public static final Level[] LEVELS = {
+            new Level(6, 2, 60, 100, Integer.MAX_VALUE),
+            new Level(5, 2, 60, 150, 1500),
+            new Level(4, 2, 45, 200, 1000),
+            new Level(3, 1, 30, 300, 600),
+            new Level(2, 1, 30, 500, 300) };
+
+   private final Level[] levels;
+   private final RollingStats recent = new RollingStats(DOWN_FRAMES);
+   private final RollingStats longer = new RollingStats(UP_FRAMES);
+   private float budgetMillis;
+   private volatile int level;
+   private int changes;
+
+   public QualityGovernor() {
+      this(DEFAULT_BUDGET_MILLIS, LEVELS);
+   }
+
+   /**
+    * @param budgetMillis The time a frame's work may take, e.g. 16 for 60
+    *        fps.
+    * @param levels The quality levels, best first.
+    */
+   public QualityGovernor(float budgetMillis, Level[] levels) {
+      if (levels.length == 0) throw new IllegalArgumentException("no levels");
+      setBudgetMillis(budgetMillis);
+      this.levels = levels;
+   }
+
+   /**
+    * Adds the time the work of a frame took and changes the level if the
+    * recent frames call for it.
+    *
+    * @return true if the level changed.
+    */
+   public boolean update(float frameMillis) {
+      recent.add(frameMillis);
+      longer.add(frameMillis);
+
+      int next = level;
+      if (recent.size() == DOWN_FRAMES && recent.percentile(0.5f) > budgetMillis) {
+         next = Math.min(level + 1, levels.length - 1);
+      } else if (longer.size() == UP_FRAMES && longer.percentile(0.9f) < budgetMillis * UP_FRACTION) {
+         next = Math.max(level - 1, 0);
+      }
+      if (next == level) return false;
+      setLevel(next);
+      return true;
+   }
+
+   /** The current level, 0 being the best. */
+   public int getLevel() {
+      return level;
+   }
+
+   /** Jumps to the given level and starts measuring over. */
+   public void setLevel(int level) {
+      if (level < 0 || level >= levels.length) throw new IllegalArgumentException("level " + level);
+      if (level != this.level) changes++;
+      this.level = level;
+      recent.clear();
+      longer.clear();
+   }
+
+   /** The settings of the current level. */
+   public Level getSettings() {
+      return levels[level];
+   }
+
+   public int getLevelCount() {
+      return levels.length;
+   }
+
+   /** Number of level changes so far. */
+   public int getChanges() {
+      return changes;
+   }
+
+   public void setBudgetMillis(float budgetMillis) {
+      if (budgetMillis <= 0) throw new IllegalArgumentException("budgetMillis <= 0");
+      this.budgetMillis = budgetMillis;
+   }
+
+   public float getBudgetMillis() {
+      return budgetMillis;
+   }
+}
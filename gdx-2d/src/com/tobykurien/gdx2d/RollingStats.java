@@ -0,0 +1,72 @@
+package com.tobykurien.gdx2d;
+
+import java.util.Arrays;
+
+/**
+ * The last few hundred values of one metric, in a ring. Percentiles sort a
+ * copy of the window, and only when asked for after new samples came in,
+ * so adding a sample is a single array write.
+ */
+public class RollingStats {
+   private final float[] samples;
+   private final float[] sorted;
+   private int count;
+   private int next;
+   private boolean dirty;
+
+   /** @param window How many of the latest samples to keep. */
+   public RollingStats(int window) {
+      if (window < 1) throw new IllegalArgumentException("window < 1");
+      samples = new float[window];
+      sorted = new float[window];
+   }
+
+   public void add(float value) {
+      samples[next] = value;
+      next = (next + 1) % samples.length;
+      if (count < samples.length) count++;
+      dirty = true;
+   }
+
+   /** The latest sample, or 0 if there is none. */
+   public float last() {
+      if (count == 0) return 0;
+      return samples[(next + samples.length - 1) % samples.length];
+   }
+
+   /**
+    * The value below which the given fraction of the window lies, e.g. 0.99
+    * for the 99th percentile. 0 if there are no samples.
+    */
+   public float percentile(float p) {
+      if (count == 0) return 0;
+      if (dirty) {
+         System.arraycopy(samples, 0, sorted, 0, count);
+         Arrays.sort(sorted, 0, count);
+         dirty = false;
+      }
+      int i = (int) Math.ceil(p * count) - 1;
+      return sorted[Math.max(0, Math.min(count - 1, i))];
+   }
+
+   public float sum() {
+      float sum = 0;
+      for (int i = 0; i < count; i++) sum += samples[i];
+      return sum;
+   }
+
+   public float mean() {
+      return count == 0 ? 0 : sum() / count;
+   }
+
+   /** Number of samples in the window. */
+   public int size() {
+      return count;
+   }
+
+   public void clear() {
+      count = 0;
+      next = 0;
+      dirty = false;
+   }
+}
@@ -0,0 +1,212 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.math.MathUtils;
+
+/**
+ * Runs animation scale tweens on many sprites at once. Each running
+ * animation is a slot in a set of parallel arrays, updated together in one
+ * loop per frame and written straight to its {@link BodySprite}. A finished
+ * or killed animation hands its slot to the last one, so starting an
+ * animation is a few array writes and never allocates once the arrays have
+ * grown to the peak number of animations.
+ * <br/><br/>
+ *
+ * Repeats work like the tween engine's: a yoyo animation runs back to the
+ * start value on every other repeat, easing included.
+ */
+public class ScaleAnimations {
+   public static final int LINEAR = 0;
+   public static final int SINE_IN = 1;
+   public static final int SINE_OUT = 2;
+   public static final int SINE_INOUT = 3;
+   public static final int QUAD_IN = 4;
+   public static final int QUAD_OUT = 5;
+   public static final int QUAD_INOUT = 6;
+
+   private int count;
+   private BodySprite[] targets;
+   private float[] elapsed;
+   private float[] duration;
+   private float[] fromX;
+   private float[] fromY;
+   private float[] toX;
+   private float[] toY;
+   private byte[] easing;
+   private int[] repeats;
+   private boolean[] yoyo;
+
+   public ScaleAnimations() {
+      this(16);
+   }
+
+   public ScaleAnimations(int capacity) {
+      allocate(Math.max(1, capacity));
+   }
+
+   /**
+    * Animates the sprite's animation scale from its current value to the
+    * given one. A running animation on the same sprite is replaced.
+    *
+    * @param duration Length of one run, in seconds.
+    * @param easing One of the easing constants.
+    * @param repeats How many times to run again after the first run.
+    * @param yoyo Whether repeats alternate direction.
+    */
+   public void start(BodySprite target, float duration, float toX, float toY, int easing, int repeats,
+            boolean yoyo) {
+      if (duration <= 0) throw new IllegalArgumentException("duration <= 0");
+      if (easing < LINEAR || easing > QUAD_INOUT) throw new IllegalArgumentException("easing: " + easing);
+      if (repeats < 0) throw new IllegalArgumentException("repeats < 0");
+
+      int i = target.animation;
+      if (i < 0) {
+         if (count == targets.length) grow();
+         i = count++;
+         targets[i] = target;
+         target.animation = i;
+      }
+      elapsed[i] = 0;
+      this.duration[i] = duration;
+      fromX[i] = target.getAnimationScaleX();
+      fromY[i] = target.getAnimationScaleY();
+      this.toX[i] = toX;
+      this.toY[i] = toY;
+      this.easing[i] = (byte) easing;
+      this.repeats[i] = repeats;
+      this.yoyo[i] = yoyo;
+   }
+
+   /**
+    * Advances all animations and applies their values. Animations that
+    * finish are set to their end value and removed.
+    */
+   public void update(float delta) {
+      for (int i = 0; i < count;) {
+         float runs = (elapsed[i] += delta) / duration[i];
+         int run = (int) runs;
+         float t;
+         boolean done = run > repeats[i];
+         if (done) {
+            run = repeats[i];
+            t = 1;
+         } else {
+            t = runs - run;
+         }
+         if (yoyo[i] && (run & 1) == 1) t = 1 - t;
+
+         float e = ease(easing[i], t);
+         targets[i].setAnimationScale(fromX[i] + (toX[i] - fromX[i]) * e,
+                  fromY[i] + (toY[i] - fromY[i]) * e);
+
+         if (done) {
+            remove(i); // the last one moved into i
+         } else {
+            i++;
+         }
+      }
+   }
+
+   /**
+    * Stops the sprite's animation, leaving its scale where it is.
+    *
+    * @return false if the sprite was not animated.
+    */
+   public boolean kill(BodySprite target) {
+      int i = target.animation;
+      if (i < 0 || i >= count || targets[i] != target) return false;
+      remove(i);
+      return true;
+   }
+
+   public boolean isAnimated(BodySprite target) {
+      int i = target.animation;
+      return i >= 0 && i < count && targets[i] == target;
+   }
+
+   /** Number of running animations. */
+   public int size() {
+      return count;
+   }
+
+   /** Stops all animations. */
+   public void clear() {
+      for (int i = 0; i < count; i++) {
+         targets[i].animation = -1;
+         targets[i] = null;
+      }
+      count = 0;
+   }
+
+   static float ease(int easing, float t) {
+      switch (easing) {
+      case SINE_IN:
+         return 1 - MathUtils.cos(t * MathUtils.PI / 2);
+      case SINE_OUT:
+         return MathUtils.sin(t * MathUtils.PI / 2);
+      case SINE_INOUT:
+         return (1 - MathUtils.cos(t * MathUtils.PI)) / 2;
+      case QUAD_IN:
+         return t * t;
+      case QUAD_OUT:
+         return t * (2 - t);
+      case QUAD_INOUT:
+         return t < 0.5f ? 2 * t * t : 1 - 2 * (1 - t) * (1 - t);
+      default:
+         return t;
+      }
+   }
+
+   private void remove(int i) {
+      targets[i].animation = -1;
+      int last = --count;
+      if (i != last) {
+         BodySprite moved = targets[last];
+         targets[i] = moved;
+         moved.animation = i;
+         elapsed[i] = elapsed[last];
+         duration[i] = duration[last];
+         fromX[i] = fromX[last];
+         fromY[i] = fromY[last];
+         toX[i] = toX[last];
+         toY[i] = toY[last];
+         easing[i] = easing[last];
+         repeats[i] = repeats[last];
+         yoyo[i] = yoyo[last];
+      }
+      targets[last] = null;
+   }
+
+   private void allocate(int size) {
+      targets = new BodySprite[size];
+      elapsed = new float[size];
+      duration = new float[size];
+      fromX = new float[size];
+      fromY = new float[size];
+      toX = new float[size];
+      toY = new float[size];
+      easing = new byte[size];
+      repeats = new int[size];
+      yoyo = new boolean[size];
+   }
+
+   private void grow() {
+      BodySprite[] oldTargets = targets;
+      float[] oldElapsed = elapsed, oldDuration = duration;
+      float[] oldFromX = fromX, oldFromY = fromY, oldToX = toX, oldToY = toY;
+      byte[] oldEasing = easing;
+      int[] oldRepeats = repeats;
+      boolean[] oldYoyo = yoyo;
+
+      allocate((int) (targets.length * 1.75f) + 1);
+      System.arraycopy(oldTargets, 0, targets, 0, count);
+      System.arraycopy(oldElapsed, 0, elapsed, 0, count);
+      System.arraycopy(oldDuration, 0, duration, 0, count);
+      System.arraycopy(oldFromX, 0, fromX, 0, count);
+      System.arraycopy(oldFromY, 0, fromY, 0, count);
+      System.arraycopy(oldToX, 0, toX, 0, count);
+      System.arraycopy(oldToY, 0, toY, 0, count);
+      System.arraycopy(oldEasing, 0, easing, 0, count);
+      System.arraycopy(oldRepeats, 0, repeats, 0, count);
+      System.arraycopy(oldYoyo, 0, yoyo, 0, count);
+   }
+}
@@ -0,0 +1,78 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.Fixture;
+
+/**
+ * Counts the balls caught by the bottle. A ball scores when it touches the
+ * bottle or a ball that already scored, and loses its point again if it
+ * falls into the {@link KillZone}. Driven by {@link ContactEvents}, after
+ * the step.
+ */
+public class ScoreCounter implements ContactEvents.Handler {
+   private final Body bottle;
+   private final Fixture sensor;
+   private int score;
+
+   public ScoreCounter(Body bottle, KillZone killZone) {
+      this.bottle = bottle;
+      this.sensor = killZone.getSensor();
+   }
+
+   @Override
+   public void beginContact(Fixture a, Fixture b) {
+      if (a == sensor) {
+         lost(sprite(b));
+      } else if (b == sensor) {
+         lost(sprite(a));
+      } else if (a.getBody() == bottle) {
+         caught(sprite(b));
+      } else if (b.getBody() == bottle) {
+         caught(sprite(a));
+      } else if (isScored(sprite(a))) {
+         // the bottle has a sprite too, so it is ruled out above
+         caught(sprite(b));
+      } else if (isScored(sprite(b))) {
+         caught(sprite(a));
+      }
+   }
+
+   @Override
+   public void endContact(Fixture a, Fixture b) {
+   }
+
+   public int getScore() {
+      return score;
+   }
+
+   /** Sets the score after the scored balls were restored. */
+   void setScore(int score) {
+      this.score = score;
+   }
+
+   /** The ball's sprite, also for balls baked by {@link BallSettler}. */
+   private static BodySprite sprite(Fixture fixture) {
+      Object data = fixture.getUserData() instanceof Body
+               ? ((Body) fixture.getUserData()).getUserData()
+               : fixture.getBody().getUserData();
+      return data instanceof BodySprite ? (BodySprite) data : null;
+   }
+
+   private static boolean isScored(BodySprite ball) {
+      return ball != null && ball.scored;
+   }
+
+   private void caught(BodySprite ball) {
+      if (ball != null && !ball.scored) {
+         ball.scored = true;
+         score++;
+      }
+   }
+
+   private void lost(BodySprite ball) {
+      if (ball != null && ball.scored) {
+         ball.scored = false;
+         score--;
+      }
+   }
+}
@@ -0,0 +1,540 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.BodyDef.BodyType;
+import com.badlogic.gdx.physics.box2d.FixtureDef;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.NumberUtils;
+import com.badlogic.gdx.utils.TimeUtils;
+
+/**
+ * The bottle-and-balls scene without any rendering. It owns the Box2D world
+ * and steps it, but never touches GL, so it can also be driven headless.
+ * <br/><br/>
+ *
+ * The frame loop ({@link #update(float)}) does not allocate once the ball
+ * pool is warm: the body list is reused every frame.
+ * <br/><br/>
+ *
+ * Physics runs at a fixed rate, independent of the frame rate. Frame time
+ * is collected in an accumulator and spent in whole steps, at most
+ * {@link #setMaxSubsteps(int)} per frame so a slow frame can't snowball
+ * into ever slower ones. Sprites are drawn between the last two physics
+ * states by the fraction of a step left over.
+ * <br/><br/>
+ *
+ * Balls that fall below the scene hit a sensor ({@link KillZone}) and are
+ * recycled after the step, so no per-body position check is needed.
+ * Contacts are buffered by {@link ContactEvents} and handled after each
+ * step, by the kill zone and the {@link ScoreCounter}.
+ * <br/><br/>
+ *
+ * Static bodies with a sprite, the bottle, are listed apart from the rest
+ * ({@link #getStaticBodies()}) so the renderer can keep them in a
+ * {@link StaticLayer}; {@link #getStaticVersion()} changes when they move.
+ * <br/><br/>
+ *
+ * A {@link QualityGovernor} can set the solver iterations, the physics rate
+ * and the ball cap; its level is applied at the start of each update.
+ */
+public class Simulation implements Disposable {
+   static final int BALL_POOL_SIZE = 1000;
+   static final String BOTTLE_MODEL = "test01";
+   static final float BOTTLE_WIDTH = 1;
+   static final float DEFAULT_STEP_RATE = 60;
+   static final int DEFAULT_MAX_SUBSTEPS = 5;
+   static final int DEFAULT_VELOCITY_ITERATIONS = 6;
+   static final int DEFAULT_POSITION_ITERATIONS = 2;
+
+   private final World world;
+   private final BallPool balls;
+   private final ScaleAnimations animations;
+   private final KillZone killZone;
+   private final ContactEvents contacts;
+   private final ScoreCounter score;
+   private final Body bottle;
+   private final Array<Body> statics = new Array<Body>();
+   private int staticVersion;
+
+   // Fixed timestep
+   private float timeStep = 1 / DEFAULT_STEP_RATE;
+   private int maxSubsteps = DEFAULT_MAX_SUBSTEPS;
+   private float accumulator;
+   private float alpha;
+   private int steps;
+   private long totalSteps;
+   private int velocityIterations = DEFAULT_VELOCITY_ITERATIONS;
+   private int positionIterations = DEFAULT_POSITION_ITERATIONS;
+   private int maxBalls = Integer.MAX_VALUE;
+   private QualityGovernor governor;
+   private QualityGovernor.Level applied;
+
+   // Reusable stuff
+   private final Array<Body> bodies = new Array<Body>();
+
+   private int recycled;
+   private SpawnRecorder recorder;
+   private BallSettler settler;
+   private ParticleSystem particles;
+
+   // Metrics of the last update, read by the renderer
+   private float stepMillis;
+   private float animationMillis;
+   private int bodyCount;
+   private int fixtureCount;
+   private int contactCount;
+
+   /**
+    * @param loader The loader holding the "test01" bottle model.
+    * @param bottleRegion The bottle image, or null when running headless.
+    * @param ballRegion The image shared by all balls, or null when running
+    *        headless.
+    */
+   public Simulation(BodyEditorLoader loader, TextureRegion bottleRegion, TextureRegion ballRegion) {
+      world = new World(new Vector2(0, -10), true);
+      bottle = createBottle(loader, bottleRegion);
+      statics.add(bottle);
+      balls = new BallPool(world, ballRegion, BALL_POOL_SIZE);
+      killZone = new KillZone(world, -Gdx2d.CAMERA_SCALE);
+      score = new ScoreCounter(bottle, killZone);
+      contacts = new ContactEvents();
+      contacts.addHandler(killZone);
+      contacts.addHandler(score);
+      world.setContactListener(contacts);
+      animations = new ScaleAnimations(BALL_POOL_SIZE);
+   }
+
+   /**
+    * Advances the scene by one frame: steps the world as many times as the
+    * elapsed time calls for, runs the animations and recycles balls that fell
+    * out of view. Sprites are not moved here, the renderer places the ones
+    * it draws with {@link BodySprite#interpolate(Body, float)} and
+    * {@link #getAlpha()}.
+    *
+    * @param delta The frame time in seconds.
+    */
+   public void update(float delta) {
+      if (governor != null) applyGovernor();
+
+      // drop time we could never catch up on
+      accumulator += Math.min(delta, maxSubsteps * timeStep);
+
+      int n = 0;
+      while (accumulator >= timeStep && n < maxSubsteps) {
+         accumulator -= timeStep;
+         n++;
+      }
+      if (n == maxSubsteps) accumulator = Math.min(accumulator, timeStep);
+      alpha = accumulator / timeStep;
+      if (recorder != null && n > 1) recorder.frame(totalSteps, n);
+      advance(n, delta);
+   }
+
+   /**
+    * Advances the scene by a frame of exactly the given number of steps, as
+    * a replay does with a recorded frame. The accumulator is left alone and
+    * sprites are drawn at the last step.
+    */
+   public void updateSteps(int steps) {
+      if (steps < 0) throw new IllegalArgumentException("steps < 0");
+      if (governor != null) applyGovernor();
+      alpha = 1;
+      advance(steps, steps * timeStep);
+   }
+
+   private void advance(int count, float delta) {
+      steps = 0;
+      world.getBodies(bodies);
+      long start = TimeUtils.nanoTime();
+      while (steps < count) {
+         savePrevious();
+         world.step(timeStep, velocityIterations, positionIterations);
+         contacts.process();
+         if (particles != null) particles.step(timeStep);
+         steps++;
+         totalSteps++;
+      }
+      if (settler != null && steps > 0) settler.update(bodies, steps * timeStep, bottle);
+
+      long stepped = TimeUtils.nanoTime();
+      animations.update(delta);
+      long animated = TimeUtils.nanoTime();
+      stepMillis = (stepped - start) / 1000000f;
+      animationMillis = (animated - stepped) / 1000000f;
+
+      recycled = 0;
+      Array<Body> queued = killZone.getQueued();
+      for (int i = 0, n = queued.size; i < n; i++) {
+         // out of view, keep it for the next spawn
+         if (freeBall(queued.get(i))) recycled++;
+      }
+      killZone.clear();
+      if (particles != null) recycled += particles.removeBelow(killZone.getTop());
+
+      // settling destroys the cells it un-bakes and the pool destroys balls
+      // it has no room for, so the array may hold destroyed bodies
+      world.getBodies(bodies);
+      bodyCount = world.getBodyCount();
+      fixtureCount = countFixtures();
+      contactCount = world.getContactCount();
+   }
+
+   private void applyGovernor() {
+      QualityGovernor.Level level = governor.getSettings();
+      if (level == applied) return;
+      applied = level;
+      setStepRate(level.stepRate);
+      setIterations(level.velocityIterations, level.positionIterations);
+      setMaxBalls(level.maxBalls);
+   }
+
+   private void savePrevious() {
+      for (int i = 0, n = bodies.size; i < n; i++) {
+         Body b = bodies.get(i);
+         BodySprite e = (BodySprite) b.getUserData();
+         if (e != null && b.isActive()) e.savePrevious(b);
+      }
+   }
+
+   private int countFixtures() {
+      int n = 0;
+      for (int i = 0, size = bodies.size; i < size; i++) {
+         Body b = bodies.get(i);
+         if (b.isActive()) n += b.getFixtureList().size;
+      }
+      return n;
+   }
+
+   /**
+    * Sets the physics rate, e.g. 30 on low-end devices. Independent of the
+    * frame rate.
+    */
+   public void setStepRate(float hz) {
+      if (hz <= 0) throw new IllegalArgumentException("hz <= 0");
+      timeStep = 1 / hz;
+   }
+
+   public float getStepRate() {
+      return 1 / timeStep;
+   }
+
+   /**
+    * Sets how many physics steps a single frame may run to catch up. Time
+    * beyond that is dropped, so the simulation slows down instead of
+    * spiralling.
+    */
+   public void setMaxSubsteps(int maxSubsteps) {
+      if (maxSubsteps < 1) throw new IllegalArgumentException("maxSubsteps < 1");
+      this.maxSubsteps = maxSubsteps;
+   }
+
+   public int getMaxSubsteps() {
+      return maxSubsteps;
+   }
+
+   /** Sets the Box2D solver iterations of every step, 6 and 2 by default. */
+   public void setIterations(int velocityIterations, int positionIterations) {
+      if (velocityIterations < 1 || positionIterations < 1) throw new IllegalArgumentException("iterations < 1");
+      this.velocityIterations = velocityIterations;
+      this.positionIterations = positionIterations;
+   }
+
+   public int getVelocityIterations() {
+      return velocityIterations;
+   }
+
+   public int getPositionIterations() {
+      return positionIterations;
+   }
+
+   /**
+    * Sets how many balls may be in play, bodies or particles. Spawns beyond
+    * that are refused; balls already in play stay.
+    */
+   public void setMaxBalls(int maxBalls) {
+      if (maxBalls < 0) throw new IllegalArgumentException("maxBalls < 0");
+      this.maxBalls = maxBalls;
+   }
+
+   public int getMaxBalls() {
+      return maxBalls;
+   }
+
+   /** Balls in play, baked ones included, pooled ones not. */
+   public int getBallCount() {
+      return balls.getActive() + (particles != null ? particles.getCount() : 0);
+   }
+
+   /**
+    * Lets the governor's level set the step rate, iterations and ball cap
+    * from the next update on, or stops if null; the settings of the last
+    * level applied are kept.
+    */
+   public void setGovernor(QualityGovernor governor) {
+      this.governor = governor;
+      applied = null;
+   }
+
+   public QualityGovernor getGovernor() {
+      return governor;
+   }
+
+   /** Picks up the step count and score of a restored {@link WorldSnapshot}. */
+   void restored(long totalSteps, int score) {
+      this.totalSteps = totalSteps;
+      this.score.setScore(score);
+      accumulator = 0;
+      // the bottle may have been moved
+      staticVersion++;
+   }
+
+   /** Number of physics steps run during the last {@link #update(float)}. */
+   public int getSteps() {
+      return steps;
+   }
+
+   /** Number of physics steps run since the simulation was created. */
+   public long getTotalSteps() {
+      return totalSteps;
+   }
+
+   /**
+    * How far between the last two physics states the sprites were placed,
+    * from 0 to 1.
+    */
+   public float getAlpha() {
+      return alpha;
+   }
+
+   /**
+    * Adds a ball above the bottle.
+    *
+    * @return The ball's body, or null if balls are particles (see
+    *         {@link #setParticles(ParticleSystem)}) or there are
+    *         {@link #setMaxBalls(int)} balls already.
+    */
+   public Body spawnBall() {
+      if (getBallCount() >= maxBalls) return null;
+      if (recorder != null) recorder.spawn(totalSteps);
+      if (particles != null) {
+         particles.add(0, 1);
+         return null;
+      }
+
+      // place ball above bottle, reusing one that fell out of view if we can
+      Body body = balls.obtain(0, 1);
+
+      // grow and shrink back twice
+      animations.start((BodySprite) body.getUserData(), 0.1f, 2, 5, ScaleAnimations.SINE_IN, 3, true);
+      return body;
+   }
+
+   /**
+    * Takes a ball out of the world and keeps it for the next spawn.
+    *
+    * @return false if the body was not an active ball.
+    */
+   public boolean freeBall(Body body) {
+      if (!body.isActive() || body == bottle) return false;
+      animations.kill((BodySprite) body.getUserData());
+      balls.free(body);
+      return true;
+   }
+
+   public World getWorld() {
+      return world;
+   }
+
+   public Body getBottle() {
+      return bottle;
+   }
+
+   /**
+    * The static bodies with a sprite, which don't move between steps. Do
+    * not modify.
+    */
+   public Array<Body> getStaticBodies() {
+      return statics;
+   }
+
+   /** Changes whenever a static body was moved, starting at 0. */
+   public int getStaticVersion() {
+      return staticVersion;
+   }
+
+   public BallPool getBalls() {
+      return balls;
+   }
+
+   public ContactEvents getContactEvents() {
+      return contacts;
+   }
+
+   /** Balls caught by the bottle, see {@link ScoreCounter}. */
+   public int getScore() {
+      return score.getScore();
+   }
+
+   public ScaleAnimations getAnimations() {
+      return animations;
+   }
+
+   /**
+    * All bodies in the world as of the last {@link #update(float)}. Inactive
+    * (pooled) balls and bodies without a sprite are included. The array is
+    * reused, do not keep it.
+    */
+   public Array<Body> getBodies() {
+      return bodies;
+   }
+
+   /** Number of balls recycled during the last {@link #update(float)}. */
+   public int getRecycled() {
+      return recycled;
+   }
+
+   /** Time spent in world steps during the last {@link #update(float)}. */
+   public float getStepMillis() {
+      return stepMillis;
+   }
+
+   /** Time spent on animations during the last {@link #update(float)}. */
+   public float getAnimationMillis() {
+      return animationMillis;
+   }
+
+   /**
+    * Bodies in the world, pooled balls included, as of the last
+    * {@link #update(float)}. Safe to read from another thread, unlike the
+    * world itself.
+    */
+   public int getBodyCount() {
+      return bodyCount;
+   }
+
+   /** Fixtures of active bodies, as of the last {@link #update(float)}. */
+   public int getFixtureCount() {
+      return fixtureCount;
+   }
+
+   /** Contacts in the world, as of the last {@link #update(float)}. */
+   public int getContactCount() {
+      return contactCount;
+   }
+
+   /**
+    * Turns baking of resting balls into static bodies on or off. Turning it
+    * off makes all baked balls dynamic again.
+    *
+    * @see BallSettler
+    */
+   public void setSettling(boolean settling) {
+      if (settling && settler == null) {
+         settler = new BallSettler(world);
+      } else if (!settling && settler != null) {
+         settler.unbakeAll();
+         settler.dispose();
+         settler = null;
+      }
+   }
+
+   /** The settler if settling is on, else null. */
+   public BallSettler getSettler() {
+      return settler;
+   }
+
+   /**
+    * Makes new balls particles of the given system instead of Box2D bodies,
+    * or Box2D bodies again if null. The particles collide with the bottle,
+    * which is added to the system here, and with each other. Balls that are
+    * already bodies stay bodies.
+    */
+   public void setParticles(ParticleSystem particles) {
+      this.particles = particles;
+      if (particles != null) particles.addStatic(bottle);
+   }
+
+   public ParticleSystem getParticles() {
+      return particles;
+   }
+
+   /**
+    * Records every spawn from now on, or stops if null. The recorder is
+    * closed with the simulation. Its header takes the step rate, settling
+    * and particles as they are now, so set those first.
+    */
+   public void setRecorder(SpawnRecorder recorder) {
+      this.recorder = recorder;
+      if (recorder != null) recorder.start(this);
+   }
+
+   /**
+    * A checksum of where everything is: the bodies with a sprite, pooled and
+    * baked balls included, and the particles. The bits of each position are
+    * added as integers, so the order of the world's bodies doesn't matter.
+    * A replay of a recording ends with the checksum of the session.
+    */
+   public long checksum() {
+      long sum = 0;
+      world.getBodies(bodies);
+      for (int i = 0, n = bodies.size; i < n; i++) {
+         Body b = bodies.get(i);
+         if (!(b.getUserData() instanceof BodySprite)) continue;
+         Vector2 position = b.getPosition();
+         sum += checksum(position.x, position.y) * 31 + NumberUtils.floatToRawIntBits(b.getAngle());
+      }
+      if (particles != null) {
+         float[] x = particles.getX(), y = particles.getY();
+         for (int i = 0, n = particles.getCount(); i < n; i++) sum += checksum(x[i], y[i]);
+      }
+      return sum;
+   }
+
+   private static long checksum(float x, float y) {
+      return NumberUtils.floatToRawIntBits(x) * 31L + NumberUtils.floatToRawIntBits(y);
+   }
+
+   @Override
+   public void dispose() {
+      if (recorder != null) recorder.close(totalSteps, checksum());
+      if (settler != null) settler.dispose();
+      balls.dispose();
+      world.dispose();
+   }
+
+   private Body createBottle(BodyEditorLoader loader, TextureRegion region) {
+      BodySprite sprite = region != null ? new BodySprite(region) : new BodySprite();
+      sprite.fixed = true;
+
+      // 1. Create a BodyDef, as usual.
+      BodyDef bd = new BodyDef();
+      bd.position.set(0, -1);
+      bd.type = BodyType.StaticBody; // DynamicBody;
+
+      // 2. Create a FixtureDef, as usual.
+      FixtureDef fd = new FixtureDef();
+      fd.density = 1;
+      fd.friction = 0.5f;
+      fd.restitution = 0.3f;
+
+      // 3. Create a Body, as usual.
+      Body bottleModel = world.createBody(bd);
+      bottleModel.setUserData(sprite);
+
+      // 4. Create the body fixture automatically by using the loader.
+      loader.attachFixture(bottleModel, BOTTLE_MODEL, fd, BOTTLE_WIDTH);
+
+      // Reference the origin of the model
+      Vector2 bottleModelOrigin = loader.getOrigin(BOTTLE_MODEL, BOTTLE_WIDTH).cpy();
+      float aspect = region != null ? sprite.getHeight() / sprite.getWidth() : 1;
+      sprite.setSize(BOTTLE_WIDTH, BOTTLE_WIDTH * aspect);
+      sprite.setOrigin(bottleModelOrigin.x, bottleModelOrigin.y);
+      sprite.savePrevious(bottleModel);
+      return bottleModel;
+   }
+}
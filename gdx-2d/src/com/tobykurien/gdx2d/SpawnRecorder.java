@@ -0,0 +1,137 @@
+package com.tobykurien.gdx2d;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * Writes the physics step of every ball spawn, so a session can be replayed
+ * exactly with {@link SpawnRecording}. Spawns are keyed by step rather than
+ * by frame: the step count is what the simulation actually sees, with or
+ * without a physics thread. Frames that ran more than one step are recorded
+ * too, as balls are recycled and settled once per frame, after its steps.
+ * Frames that ran none changed nothing but the animations and are left out.
+ * <br/><br/>
+ *
+ * The file holds a header (magic, step rate, whether balls settle, particle
+ * capacity and radius, 0 for Box2D balls) followed by one varint per event:
+ * the number of steps since the previous event, shifted left by one, or'ed
+ * with 1 for a frame and plus one. A frame is followed by its step count. A
+ * 0 ends the events and is followed by the total number of steps, then a
+ * byte that is 1 if a long with the final {@link Simulation#checksum()}
+ * follows. A ball every few steps costs one byte. Particle and settler
+ * tuning beyond capacity and radius is not recorded, the game leaves it at
+ * the defaults.
+ */
+public class SpawnRecorder implements Disposable {
+   static final int MAGIC = 0x53505233; // "SPR3"
+   static final int SPAWN = 0;
+   static final int FRAME = 1;
+   public static final String EXTENSION = "spr";
+
+   private final DataOutputStream out;
+   private long lastStep;
+   private boolean started;
+   private boolean closed;
+
+   /**
+    * The header is written by {@link #start(Simulation)}. The stream is
+    * closed with the recorder.
+    */
+   public SpawnRecorder(OutputStream output) {
+      out = new DataOutputStream(output);
+   }
+
+   /** Records to a new file, replacing an existing one. */
+   public static SpawnRecorder open(FileHandle file) {
+      return new SpawnRecorder(file.write(false, 8192));
+   }
+
+   /**
+    * Writes the header with the simulation's settings, called by
+    * {@link Simulation#setRecorder(SpawnRecorder)}.
+    */
+   public void start(Simulation sim) {
+      if (started) throw new IllegalStateException("Recording already started");
+      started = true;
+      ParticleSystem particles = sim.getParticles();
+      try {
+         out.writeInt(MAGIC);
+         out.writeFloat(sim.getStepRate());
+         out.writeBoolean(sim.getSettler() != null);
+         out.writeInt(particles != null ? particles.getCapacity() : 0);
+         out.writeFloat(particles != null ? particles.getRadius() : 0);
+      } catch (IOException e) {
+         throw new GdxRuntimeException(e);
+      }
+   }
+
+   /** Records a spawn before the given step. Steps must not go back. */
+   public void spawn(long step) {
+      event(SPAWN, step);
+   }
+
+   /**
+    * Records a frame that ran the given number of steps from the given one,
+    * after the spawns before that step.
+    */
+   public void frame(long step, int steps) {
+      if (steps < 1) throw new IllegalArgumentException("steps < 1");
+      if (event(FRAME, step)) writeVarLong(steps);
+   }
+
+   private boolean event(int type, long step) {
+      if (closed) return false;
+      if (!started) throw new IllegalStateException("Recording not started");
+      if (step < lastStep) throw new IllegalArgumentException("step " + step + " < " + lastStep);
+      writeVarLong(((step - lastStep) << 1 | type) + 1);
+      lastStep = step;
+      return true;
+   }
+
+   /**
+    * Ends the recording after the given number of steps, with the state's
+    * checksum at that point for a replay to compare with.
+    */
+   public void close(long steps, long checksum) {
+      close(steps, true, checksum);
+   }
+
+   /** Ends the recording at the last event, without a checksum. */
+   @Override
+   public void dispose() {
+      close(lastStep, false, 0);
+   }
+
+   private void close(long steps, boolean hasChecksum, long checksum) {
+      if (closed) return;
+      closed = true;
+      try {
+         if (started) {
+            writeVarLong(0);
+            writeVarLong(Math.max(steps, lastStep));
+            out.writeBoolean(hasChecksum);
+            if (hasChecksum) out.writeLong(checksum);
+         }
+         out.close();
+      } catch (IOException e) {
+         throw new GdxRuntimeException(e);
+      }
+   }
+
+   private void writeVarLong(long value) {
+      try {
+         while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+         }
+         out.writeByte((int) value);
+      } catch (IOException e) {
+         throw new GdxRuntimeException(e);
+      }
+   }
+}
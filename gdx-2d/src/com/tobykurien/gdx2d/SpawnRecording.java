@@ -0,0 +1,109 @@
+package com.tobykurien.gdx2d;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongArray;
+
+/**
+ * A session written by {@link SpawnRecorder}: the step rate and ball
+ * settings, the step before which each ball was spawned, the frames that ran
+ * more than one step, how many steps the session ran and the checksum of its
+ * final state.
+ */
+public class SpawnRecording {
+   public final float stepRate;
+   /** Whether balls at rest were baked, see {@link Simulation#setSettling(boolean)}. */
+   public final boolean settle;
+   /** Capacity and radius of the particle system balls were, 0 if bodies. */
+   public final int particleCapacity;
+   public final float particleRadius;
+   /** Spawn steps in order, with repeats for several spawns in one step. */
+   public final LongArray spawns;
+   /**
+    * The first step of each frame that ran more than one, in order, and how
+    * many it ran. Every other step was a frame of its own.
+    */
+   public final LongArray frames;
+   public final IntArray frameSteps;
+   public final long steps;
+   /** Whether the session ended with a checksum, see {@link Simulation#checksum()}. */
+   public final boolean hasChecksum;
+   public final long checksum;
+
+   public SpawnRecording(float stepRate, boolean settle, int particleCapacity, float particleRadius,
+            LongArray spawns, LongArray frames, IntArray frameSteps, long steps, boolean hasChecksum, long checksum) {
+      this.stepRate = stepRate;
+      this.settle = settle;
+      this.particleCapacity = particleCapacity;
+      this.particleRadius = particleRadius;
+      this.spawns = spawns;
+      this.frames = frames;
+      this.frameSteps = frameSteps;
+      this.steps = steps;
+      this.hasChecksum = hasChecksum;
+      this.checksum = checksum;
+   }
+
+   public static SpawnRecording read(FileHandle file) {
+      InputStream in = file.read();
+      try {
+         return read(in);
+      } finally {
+         try {
+            in.close();
+         } catch (IOException e) {
+            // nothing left to lose
+         }
+      }
+   }
+
+   public static SpawnRecording read(InputStream input) {
+      DataInputStream in = new DataInputStream(input);
+      try {
+         if (in.readInt() != SpawnRecorder.MAGIC) throw new GdxRuntimeException("Not a spawn recording");
+         float stepRate = in.readFloat();
+         boolean settle = in.readBoolean();
+         int particleCapacity = in.readInt();
+         float particleRadius = in.readFloat();
+         if (particleCapacity < 0) throw new GdxRuntimeException("Malformed spawn recording");
+         LongArray spawns = new LongArray();
+         LongArray frames = new LongArray();
+         IntArray frameSteps = new IntArray();
+         long step = 0;
+         long event;
+         while ((event = readVarLong(in)) != 0) {
+            event--;
+            step += event >>> 1;
+            if ((event & 1) == SpawnRecorder.SPAWN) {
+               spawns.add(step);
+            } else {
+               long count = readVarLong(in);
+               if (count < 1 || count > Integer.MAX_VALUE) throw new GdxRuntimeException("Malformed spawn recording");
+               frames.add(step);
+               frameSteps.add((int) count);
+            }
+         }
+         long steps = readVarLong(in);
+         boolean hasChecksum = in.readBoolean();
+         return new SpawnRecording(stepRate, settle, particleCapacity, particleRadius, spawns, frames, frameSteps,
+                  steps, hasChecksum, hasChecksum ? in.readLong() : 0);
+      } catch (IOException e) {
+         throw new GdxRuntimeException(e);
+      }
+   }
+
+   private static long readVarLong(DataInputStream in) throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+         int b = in.readUnsignedByte();
+         value |= (long) (b & 0x7F) << shift;
+         if ((b & 0x80) == 0) return value;
+      }
+      throw new GdxRuntimeException("Malformed spawn recording");
+   }
+}
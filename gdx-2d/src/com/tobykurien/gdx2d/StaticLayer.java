@@ -0,0 +1,82 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.Sprite;
+import com.badlogic.gdx.graphics.g2d.SpriteCache;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * The sprites of static bodies, placed once and kept on the GPU in a
+ * {@link SpriteCache}. A frame only draws the cache; the sprites are placed
+ * and uploaded again only when the simulation's static version changes
+ * (see {@link Simulation#getStaticVersion()}), e.g. after a restore moved
+ * the bottle.
+ * <br/><br/>
+ *
+ * A SpriteCache can't be drawn inside a SpriteBatch, so the layer is drawn
+ * before the batch begins, underneath everything else.
+ */
+public class StaticLayer implements Disposable {
+   private final SpriteCache cache;
+   private int id = -1;
+   private int version = -1;
+   private int size;
+   private Texture texture;
+
+   /** @param size The most sprites the layer can hold. */
+   public StaticLayer(int size) {
+      cache = new SpriteCache(size, false);
+   }
+
+   /** Whether the layer was built for another static version. */
+   public boolean isStale(int version) {
+      return id < 0 || version != this.version;
+   }
+
+   /** Starts over; add the sprites, placed on their bodies, then call {@link #end(int)}. */
+   public void begin() {
+      cache.clear();
+      cache.beginCache();
+      size = 0;
+      texture = null;
+   }
+
+   public void add(Sprite sprite) {
+      cache.add(sprite);
+      texture = sprite.getTexture();
+      size++;
+   }
+
+   /** Finishes the layer, built for the given static version. */
+   public void end(int version) {
+      id = cache.endCache();
+      this.version = version;
+   }
+
+   /** @return false if there was nothing to draw. */
+   public boolean draw(Matrix4 projection) {
+      if (id < 0 || size == 0) return false;
+      // unlike SpriteBatch, the cache leaves blending to us
+      Gdx.gl.glEnable(GL10.GL_BLEND);
+      Gdx.gl.glBlendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
+      cache.setProjectionMatrix(projection);
+      cache.begin();
+      cache.draw(id);
+      cache.end();
+      Gdx.gl.glDisable(GL10.GL_BLEND);
+      return true;
+   }
+
+   /** The texture of the sprites, they are expected to share one. */
+   public Texture getTexture() {
+      return texture;
+   }
+
+   @Override
+   public void dispose() {
+      cache.dispose();
+   }
+}
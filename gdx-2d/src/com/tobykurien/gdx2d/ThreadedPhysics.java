@@ -0,0 +1,27 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * Steps a {@link Simulation} away from the render thread. Once started, the
+ * render thread must not touch the simulation or its world: it sends
+ * requests through {@link #getCommands()} and draws from
+ * {@link #latest()}. Implementations are platform specific and passed to
+ * {@link Gdx2d} by the launcher.
+ */
+public interface ThreadedPhysics extends Disposable {
+   /**
+    * Takes over the simulation and starts stepping it. May be called again
+    * after {@link #dispose()} to resume.
+    */
+   void start(Simulation sim);
+
+   /** Queue for requests to the physics thread. */
+   CommandQueue getCommands();
+
+   /**
+    * The newest complete snapshot. It belongs to the render thread until the
+    * next call.
+    */
+   TransformSnapshot latest();
+}
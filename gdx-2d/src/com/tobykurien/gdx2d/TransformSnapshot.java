@@ -0,0 +1,200 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.TimeUtils;
+
+/**
+ * The drawable state of the world after one physics step, in flat arrays:
+ * for every active or baked body with a sprite its transform before and after the
+ * step and its animation scale. Written by the physics thread, then handed
+ * to the render thread as a whole, which never has to touch a Body. The
+ * simulation's metrics come along, so the render thread needn't read those
+ * from the simulation either.
+ * <br/><br/>
+ *
+ * The static bodies (the bottle) come first, {@link #staticCount} of them,
+ * for the {@link StaticLayer}; the rest follow grouped by texture.
+ */
+public class TransformSnapshot {
+   public int count;
+   /** When the snapshot was taken, in {@link TimeUtils#nanoTime()} terms. */
+   public long time;
+   /** Length of the step that produced it, in nanoseconds. */
+   public long stepNanos;
+   /** The simulation's score at the time. */
+   public int score;
+   /** Entries 0 to staticCount - 1 are static bodies. */
+   public int staticCount;
+   /** See {@link Simulation#getStaticVersion()}, -1 before the first capture. */
+   public int staticVersion = -1;
+
+   /** See {@link Simulation#getStepMillis()} and the other getters. */
+   public float stepMillis, animationMillis;
+   public int bodyCount, fixtureCount, contactCount;
+
+   public Body[] bodies = new Body[0];
+   public BodySprite[] sprites = new BodySprite[0];
+   public float[] prevX = new float[0];
+   public float[] prevY = new float[0];
+   public float[] prevAngle = new float[0];
+   public float[] x = new float[0];
+   public float[] y = new float[0];
+   public float[] angle = new float[0];
+   public float[] scaleX = new float[0];
+   public float[] scaleY = new float[0];
+
+   /** Particle balls, if any: positions before and after the step. */
+   public int particleCount;
+   public float particleRadius;
+   public float[] particlePrevX = new float[0];
+   public float[] particlePrevY = new float[0];
+   public float[] particleX = new float[0];
+   public float[] particleY = new float[0];
+
+   // Reusable stuff
+   private final Array<Body> dynamic = new Array<Body>();
+   private final Array<Body> grouped = new Array<Body>();
+   private final Array<Texture> textures = new Array<Texture>();
+
+   /**
+    * Copies the state of the simulation's bodies. Must run on the thread
+    * that steps the simulation, right after {@link Simulation#update(float)}.
+    */
+   public void capture(Simulation sim, long time, long stepNanos) {
+      this.time = time;
+      this.stepNanos = stepNanos;
+      this.score = sim.getScore();
+      stepMillis = sim.getStepMillis();
+      animationMillis = sim.getAnimationMillis();
+      bodyCount = sim.getBodyCount();
+      fixtureCount = sim.getFixtureCount();
+      contactCount = sim.getContactCount();
+
+      Array<Body> all = sim.getBodies();
+      ensureCapacity(all.size);
+      count = 0;
+
+      Array<Body> statics = sim.getStaticBodies();
+      for (int i = 0; i < statics.size; i++) add(statics.get(i));
+      staticCount = count;
+      staticVersion = sim.getStaticVersion();
+
+      dynamic.clear();
+      for (int i = 0, n = all.size; i < n; i++) {
+         Body b = all.get(i);
+         BodySprite sprite = (BodySprite) b.getUserData();
+         if (sprite != null && !sprite.fixed && b.isActive()) dynamic.add(b);
+      }
+
+      // baked balls are inactive but still drawn
+      BallSettler settler = sim.getSettler();
+      if (settler != null) {
+         Array<BallSettler.Cell> cells = settler.getCells();
+         for (int i = 0; i < cells.size; i++) dynamic.addAll(cells.get(i).balls);
+      }
+      VisibleBodies.groupByTexture(dynamic, grouped, textures);
+      for (int i = 0, n = grouped.size; i < n; i++) add(grouped.get(i));
+      dynamic.clear();
+      grouped.clear();
+
+      ParticleSystem particles = sim.getParticles();
+      particleCount = 0;
+      if (particles != null) {
+         int n = particles.getCount();
+         if (particleX.length < n) {
+            int size = Math.max(n, (int) (particleX.length * 1.75f));
+            particlePrevX = new float[size];
+            particlePrevY = new float[size];
+            particleX = new float[size];
+            particleY = new float[size];
+         }
+         System.arraycopy(particles.getPrevX(), 0, particlePrevX, 0, n);
+         System.arraycopy(particles.getPrevY(), 0, particlePrevY, 0, n);
+         System.arraycopy(particles.getX(), 0, particleX, 0, n);
+         System.arraycopy(particles.getY(), 0, particleY, 0, n);
+         particleCount = n;
+         particleRadius = particles.getRadius();
+      }
+
+      // don't keep bodies alive that left the world
+      for (int i = count; i < bodies.length && bodies[i] != null; i++) {
+         bodies[i] = null;
+         sprites[i] = null;
+      }
+   }
+
+   /**
+    * How far the render time is between the previous and the current
+    * transforms, from 0 to 1.
+    */
+   public float alpha(long now) {
+      if (stepNanos <= 0) return 1;
+      return MathUtils.clamp((now - time) / (float) stepNanos, 0, 1);
+   }
+
+   /**
+    * Places sprite i between its previous and current transform and applies
+    * its animation scale. Render thread only.
+    */
+   public BodySprite apply(int i, float alpha) {
+      BodySprite sprite = sprites[i];
+      float px = prevX[i] + (x[i] - prevX[i]) * alpha;
+      float py = prevY[i] + (y[i] - prevY[i]) * alpha;
+      float pa = prevAngle[i] + (angle[i] - prevAngle[i]) * alpha;
+      sprite.setPosition(px - sprite.getOriginX(), py - sprite.getOriginY());
+      sprite.setRotation(MathUtils.radiansToDegrees * pa);
+      sprite.setScale(scaleX[i], scaleY[i]);
+      return sprite;
+   }
+
+   /**
+    * Adds entry i, placed as by {@link #apply(int, float)}, to a
+    * {@link QuadBatch} without touching its sprite. Render thread only.
+    */
+   public void apply(int i, float alpha, QuadBatch quads) {
+      BodySprite sprite = sprites[i];
+      float px = prevX[i] + (x[i] - prevX[i]) * alpha;
+      float py = prevY[i] + (y[i] - prevY[i]) * alpha;
+      float pa = prevAngle[i] + (angle[i] - prevAngle[i]) * alpha;
+      quads.add(px, py, sprite.getOriginX(), sprite.getOriginY(), sprite.getWidth(), sprite.getHeight(),
+               scaleX[i], scaleY[i], MathUtils.radiansToDegrees * pa);
+   }
+
+   private void add(Body b) {
+      int i = count++;
+      BodySprite sprite = (BodySprite) b.getUserData();
+      bodies[i] = b;
+      sprites[i] = sprite;
+      prevX[i] = sprite.getPrevX();
+      prevY[i] = sprite.getPrevY();
+      prevAngle[i] = sprite.getPrevAngle();
+      x[i] = b.getPosition().x;
+      y[i] = b.getPosition().y;
+      angle[i] = b.getAngle();
+      scaleX[i] = sprite.getAnimationScaleX();
+      scaleY[i] = sprite.getAnimationScaleY();
+   }
+
+   private void ensureCapacity(int size) {
+      if (size <= x.length) return;
+      size = Math.max(size, (int) (x.length * 1.75f));
+
+      Body[] newBodies = new Body[size];
+      System.arraycopy(bodies, 0, newBodies, 0, bodies.length);
+      bodies = newBodies;
+      BodySprite[] newSprites = new BodySprite[size];
+      System.arraycopy(sprites, 0, newSprites, 0, sprites.length);
+      sprites = newSprites;
+      prevX = new float[size];
+      prevY = new float[size];
+      prevAngle = new float[size];
+      x = new float[size];
+      y = new float[size];
+      angle = new float[size];
+      scaleX = new float[size];
+      scaleY = new float[size];
+   }
+}
@@ -0,0 +1,79 @@
+package com.tobykurien.gdx2d;
+
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.QueryCallback;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectSet;
+
+/**
+ * Finds the bodies with a sprite that are inside the camera view, using the
+ * world's broadphase instead of walking every body. Inactive bodies are not
+ * in the broadphase, so pooled balls are never reported. Balls baked by
+ * {@link BallSettler} are, through the body their fixture stands in for.
+ * <br/><br/>
+ *
+ * Bodies drawn by the {@link StaticLayer} are left out, and the rest come
+ * grouped by texture, so the renderer walks them without checking for the
+ * bottle and switches textures as rarely as it can.
+ */
+public class VisibleBodies implements QueryCallback {
+   private final Array<Body> found = new Array<Body>();
+   private final Array<Body> bodies = new Array<Body>();
+   private final ObjectSet<Body> seen = new ObjectSet<Body>();
+   private final Array<Texture> textures = new Array<Texture>();
+
+   /**
+    * Collects the bodies whose fixtures overlap the camera view grown by
+    * the margin on every side. The margin covers sprites drawn larger than
+    * their fixtures. The returned array is reused, do not keep it.
+    */
+   public Array<Body> query(World world, OrthographicCamera camera, float margin) {
+      found.clear();
+      seen.clear();
+
+      float halfWidth = camera.viewportWidth * camera.zoom / 2 + margin;
+      float halfHeight = camera.viewportHeight * camera.zoom / 2 + margin;
+      float x = camera.position.x;
+      float y = camera.position.y;
+      world.QueryAABB(this, x - halfWidth, y - halfHeight, x + halfWidth, y + halfHeight);
+      groupByTexture(found, bodies, textures);
+      return bodies;
+   }
+
+   /**
+    * Copies the bodies to out, those whose sprites share a texture next to
+    * each other, otherwise in their order. One pass per texture, and there
+    * are only a few.
+    */
+   static void groupByTexture(Array<Body> in, Array<Body> out, Array<Texture> textures) {
+      out.clear();
+      textures.clear();
+      for (int i = 0, n = in.size; i < n; i++) {
+         Texture texture = ((BodySprite) in.get(i).getUserData()).getTexture();
+         if (!textures.contains(texture, true)) textures.add(texture);
+      }
+      for (int t = 0; t < textures.size; t++) {
+         Texture texture = textures.get(t);
+         for (int i = 0, n = in.size; i < n; i++) {
+            Body body = in.get(i);
+            if (((BodySprite) body.getUserData()).getTexture() == texture) out.add(body);
+         }
+      }
+   }
+
+   @Override
+   public boolean reportFixture(Fixture fixture) {
+      Body body = fixture.getBody();
+      if (fixture.getUserData() instanceof Body) body = (Body) fixture.getUserData();
+      // bodies with several fixtures are reported once per fixture
+      BodySprite sprite = (BodySprite) body.getUserData();
+      if (sprite != null && !sprite.fixed && seen.add(body)) {
+         found.add(body);
+      }
+      return true;
+   }
+}
@@ -0,0 +1,324 @@
+package com.tobykurien.gdx2d;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef.BodyType;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.Shape;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * The state of a {@link Simulation} in a compact binary form, so a game
+ * that was paused, or whose process was killed, resumes where it was
+ * instead of rebuilding the pile. All numbers are big endian:
+ *
+ * <pre>
+ * int    magic 'GSN1'
+ * long   steps so far
+ * int    shape count
+ * shape: byte kind, then for a model: string name, float scale,
+ *        for a circle: float radius
+ * int    body count
+ * byte[] flags per body: type, awake, bullet, fixed rotation, scored
+ * short[] shape per body
+ * float[] x, y, angle, vx, vy, angular velocity per body
+ * int    particle count
+ * float[] x, y, vx, vy per particle
+ * string: short byte length, UTF-8 bytes
+ * </pre>
+ *
+ * Bodies refer to a table of shapes, an editor model with its scale or a
+ * circle with its radius, rather than carry their fixtures: all balls share
+ * one entry, and the whole block of bodies is read in a few bulk gets.
+ * Balls are restored through the {@link BallPool}, so they get the pool's
+ * shared sprite region, and the bottle entry moves the bottle the
+ * simulation already has.
+ * <br/><br/>
+ *
+ * Balls baked by a {@link BallSettler} are saved as sleeping balls; the
+ * settler bakes them again once they have rested for its rest time. Scale
+ * animations are not saved.
+ */
+public final class WorldSnapshot {
+   public static final String EXTENSION = "gsn";
+   static final int MAGIC = 0x47534E31; // GSN1
+   static final byte MODEL = 0;
+   static final byte CIRCLE = 1;
+   // flags
+   static final int TYPE_MASK = 3;
+   static final int AWAKE = 4;
+   static final int BULLET = 8;
+   static final int FIXED_ROTATION = 16;
+   static final int SCORED = 32;
+   static final int BODY_FLOATS = 6;
+   static final int PARTICLE_FLOATS = 4;
+   static final int BODY_BYTES = 1 + 2 + BODY_FLOATS * 4; // flags, shape, state
+
+   private WorldSnapshot() {
+   }
+
+   /**
+    * Writes the simulation's state into the buffer, or into a new one if
+    * the buffer is null or too small. Must not run while the world steps.
+    *
+    * @return The buffer, flipped for reading or writing out.
+    */
+   public static ByteBuffer save(Simulation sim, ByteBuffer buffer) {
+      // the bodies to save: active ones with a sprite and the baked balls
+      Array<Body> bodies = new Array<Body>(false, sim.getWorld().getBodyCount(), Body.class);
+      sim.getWorld().getBodies(bodies);
+      int n = 0;
+      for (int i = 0; i < bodies.size; i++) {
+         Body body = bodies.get(i);
+         if (body.isActive() && body.getUserData() instanceof BodySprite) bodies.items[n++] = body;
+      }
+      bodies.size = n;
+      BallSettler settler = sim.getSettler();
+      if (settler != null) {
+         Array<BallSettler.Cell> cells = settler.getCells();
+         for (int i = 0; i < cells.size; i++) bodies.addAll(cells.get(i).balls);
+      }
+      ParticleSystem particles = sim.getParticles();
+      int particleCount = particles != null ? particles.getCount() : 0;
+
+      byte[] bottleName = utf8(Simulation.BOTTLE_MODEL);
+      int size = 4 + 8 // magic, steps
+               + 4 + (1 + 2 + bottleName.length + 4) + (1 + 4) // shapes
+               + 4 + bodies.size * BODY_BYTES
+               + 4 + particleCount * PARTICLE_FLOATS * 4;
+      if (buffer == null || buffer.capacity() < size) {
+         buffer = ByteBuffer.allocate(size);
+      }
+      buffer.clear();
+      buffer.order(ByteOrder.BIG_ENDIAN);
+
+      buffer.putInt(MAGIC);
+      buffer.putLong(sim.getTotalSteps());
+      // shape 0 is the bottle, 1 the balls
+      buffer.putInt(2);
+      buffer.put(MODEL);
+      buffer.putShort((short) bottleName.length);
+      buffer.put(bottleName);
+      buffer.putFloat(Simulation.BOTTLE_WIDTH);
+      buffer.put(CIRCLE);
+      buffer.putFloat(BallPool.BALL_RADIUS);
+
+      Body bottle = sim.getBottle();
+      buffer.putInt(bodies.size);
+      for (int i = 0; i < bodies.size; i++) {
+         Body body = bodies.get(i);
+         int flags = body.getType().getValue();
+         // baked balls are inactive, they come back asleep
+         if (body.isAwake() && body.isActive()) flags |= AWAKE;
+         if (body.isBullet()) flags |= BULLET;
+         if (body.isFixedRotation()) flags |= FIXED_ROTATION;
+         if (((BodySprite) body.getUserData()).scored) flags |= SCORED;
+         buffer.put((byte) flags);
+      }
+      for (int i = 0; i < bodies.size; i++) {
+         Body body = bodies.get(i);
+         if (body != bottle) checkBall(body);
+         buffer.putShort((short) (body == bottle ? 0 : 1));
+      }
+      for (int i = 0; i < bodies.size; i++) {
+         Body body = bodies.get(i);
+         Vector2 position = body.getPosition();
+         Vector2 velocity = body.getLinearVelocity();
+         buffer.putFloat(position.x);
+         buffer.putFloat(position.y);
+         buffer.putFloat(body.getAngle());
+         buffer.putFloat(body.isActive() ? velocity.x : 0);
+         buffer.putFloat(body.isActive() ? velocity.y : 0);
+         buffer.putFloat(body.isActive() ? body.getAngularVelocity() : 0);
+      }
+
+      buffer.putInt(particleCount);
+      if (particleCount > 0) {
+         float[] x = particles.getX(), y = particles.getY();
+         float[] vx = particles.getVX(), vy = particles.getVY();
+         for (int i = 0; i < particleCount; i++) {
+            buffer.putFloat(x[i]);
+            buffer.putFloat(y[i]);
+            buffer.putFloat(vx[i]);
+            buffer.putFloat(vy[i]);
+         }
+      }
+      buffer.flip();
+      return buffer;
+   }
+
+   /**
+    * Saves the simulation's state to the file, see
+    * {@link #save(Simulation, ByteBuffer)}. The state is written next to the
+    * file first and then moved over it, so a process killed while writing
+    * leaves the previous snapshot, or none, rather than half a new one.
+    */
+   public static void save(Simulation sim, FileHandle file) {
+      ByteBuffer buffer = save(sim, (ByteBuffer) null);
+      FileHandle temp = file.sibling(file.name() + ".tmp");
+      temp.writeBytes(buffer.array(), 0, buffer.limit(), false);
+      temp.moveTo(file);
+   }
+
+   /**
+    * Puts the saved bodies and particles into a simulation that has no balls
+    * yet, e.g. one just created. Must not run while the world steps.
+    * <br/><br/>
+    *
+    * The whole snapshot is read and checked before the first body is made,
+    * so a truncated or corrupt one throws a GdxRuntimeException and leaves
+    * the simulation as it was.
+    */
+   public static void restore(Simulation sim, ByteBuffer buffer) {
+      if (sim.getBallCount() > 0) throw new IllegalStateException("Simulation has balls already");
+      buffer.order(ByteOrder.BIG_ENDIAN);
+      need(buffer, 4 + 8 + 4);
+      if (buffer.getInt() != MAGIC) throw new GdxRuntimeException("Not a world snapshot");
+      long steps = buffer.getLong();
+      if (steps < 0) throw new GdxRuntimeException("Bad step count " + steps);
+
+      // resolve every shape once, to the bottle or the ball pool
+      int shapeCount = buffer.getInt();
+      if (shapeCount < 0 || shapeCount > buffer.remaining()) {
+         throw new GdxRuntimeException("Bad shape count " + shapeCount);
+      }
+      boolean[] isBall = new boolean[shapeCount];
+      for (int i = 0; i < shapeCount; i++) {
+         need(buffer, 1);
+         byte kind = buffer.get();
+         if (kind == MODEL) {
+            String name = readString(buffer);
+            need(buffer, 4);
+            float scale = buffer.getFloat();
+            if (!Simulation.BOTTLE_MODEL.equals(name) || scale != Simulation.BOTTLE_WIDTH) {
+               throw new GdxRuntimeException("Unknown model in snapshot: " + name + " at " + scale);
+            }
+         } else if (kind == CIRCLE) {
+            need(buffer, 4);
+            if (buffer.getFloat() != BallPool.BALL_RADIUS) throw new GdxRuntimeException("Ball radius changed");
+            isBall[i] = true;
+         } else {
+            throw new GdxRuntimeException("Unknown shape kind " + kind);
+         }
+      }
+
+      // one bulk get per column
+      need(buffer, 4);
+      int count = buffer.getInt();
+      if (count < 0 || count > buffer.remaining() / BODY_BYTES) {
+         throw new GdxRuntimeException("Bad body count " + count);
+      }
+      byte[] flags = new byte[count];
+      buffer.get(flags);
+      short[] shapes = new short[count];
+      buffer.asShortBuffer().get(shapes);
+      buffer.position(buffer.position() + count * 2);
+      float[] state = new float[count * BODY_FLOATS];
+      buffer.asFloatBuffer().get(state);
+      buffer.position(buffer.position() + state.length * 4);
+      for (int i = 0; i < count; i++) {
+         if (shapes[i] < 0 || shapes[i] >= shapeCount) throw new GdxRuntimeException("Bad shape " + shapes[i]);
+      }
+
+      need(buffer, 4);
+      int particleCount = buffer.getInt();
+      if (particleCount < 0 || particleCount > buffer.remaining() / (PARTICLE_FLOATS * 4)) {
+         throw new GdxRuntimeException("Bad particle count " + particleCount);
+      }
+      ParticleSystem particles = sim.getParticles();
+      if (particleCount > 0 && particles == null) {
+         throw new GdxRuntimeException("Snapshot has particles, simulation has none");
+      }
+      float[] p = new float[particleCount * PARTICLE_FLOATS];
+      buffer.asFloatBuffer().get(p);
+      buffer.position(buffer.position() + p.length * 4);
+
+      BallPool balls = sim.getBalls();
+      int score = 0;
+      for (int i = 0, s = 0; i < count; i++, s += BODY_FLOATS) {
+         Body body;
+         boolean awake = (flags[i] & AWAKE) != 0;
+         if (isBall[shapes[i]]) {
+            // created in its saved state, not moved there
+            body = balls.obtain(state[s], state[s + 1], state[s + 2], state[s + 3], state[s + 4], state[s + 5], awake);
+         } else {
+            body = sim.getBottle();
+            body.setTransform(state[s], state[s + 1], state[s + 2]);
+            body.setLinearVelocity(state[s + 3], state[s + 4]);
+            body.setAngularVelocity(state[s + 5]);
+            body.setAwake(awake);
+         }
+         int type = flags[i] & TYPE_MASK;
+         if (body.getType().getValue() != type) body.setType(type(type));
+         if ((flags[i] & BULLET) != 0) body.setBullet(true);
+         if ((flags[i] & FIXED_ROTATION) != 0) body.setFixedRotation(true);
+
+         BodySprite sprite = (BodySprite) body.getUserData();
+         sprite.scored = (flags[i] & SCORED) != 0;
+         if (sprite.scored) score++;
+         sprite.savePrevious(body);
+      }
+      for (int i = 0; i < p.length; i += PARTICLE_FLOATS) {
+         particles.add(p[i], p[i + 1], p[i + 2], p[i + 3]);
+      }
+      sim.restored(steps, score);
+   }
+
+   /** Restores the state saved to the file, see {@link #restore(Simulation, ByteBuffer)}. */
+   public static void restore(Simulation sim, FileHandle file) {
+      restore(sim, ByteBuffer.wrap(file.readBytes()));
+   }
+
+   /** Balls are the pool's one-circle bodies, anything else can't be saved. */
+   private static void checkBall(Body body) {
+      Array<Fixture> fixtures = body.getFixtureList();
+      if (fixtures.size != 1 || fixtures.get(0).getType() != Shape.Type.Circle
+               || fixtures.get(0).getShape().getRadius() != BallPool.BALL_RADIUS) {
+         throw new GdxRuntimeException("Can't save a body that is neither the bottle nor a ball");
+      }
+   }
+
+   private static BodyType type(int value) {
+      switch (value) {
+      case 0:
+         return BodyType.StaticBody;
+      case 1:
+         return BodyType.KinematicBody;
+      default:
+         return BodyType.DynamicBody;
+      }
+   }
+
+   private static byte[] utf8(String s) {
+      try {
+         return s.getBytes("UTF-8");
+      } catch (UnsupportedEncodingException e) {
+         throw new GdxRuntimeException(e);
+      }
+   }
+
+   /** Throws if the buffer has fewer bytes left, before a get would. */
+   private static void need(ByteBuffer buffer, int bytes) {
+      if (buffer.remaining() < bytes) throw new GdxRuntimeException("Snapshot is truncated");
+   }
+
+   private static String readString(ByteBuffer buffer) {
+      need(buffer, 2);
+      int length = buffer.getShort();
+      if (length < 0) throw new GdxRuntimeException("Bad string length " + length);
+      need(buffer, length);
+      byte[] bytes = new byte[length];
+      buffer.get(bytes);
+      try {
+         return new String(bytes, "UTF-8");
+      } catch (UnsupportedEncodingException e) {
+         throw new GdxRuntimeException(e);
+      }
+   }
+}